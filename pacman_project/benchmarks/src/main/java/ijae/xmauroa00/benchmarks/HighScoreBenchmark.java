@@ -0,0 +1,59 @@
+package ijae.xmauroa00.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ijae.xmauroa00.HighScores;
+
+/**
+ * Measures saving a score at the end of a game, as done by {@code Menu.saveHighScore}.
+ * The game only waits for the score to be queued, this measures the time until the score is on the disk,
+ * including the compaction of the file after every {@link HighScores#COMPACT_AFTER} scores.
+ * A failed save fails the benchmark.
+ * The scores are written to a temporary file instead of the real high scores file.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HighScoreBenchmark {
+    private Path file;
+    private HighScores highScores;
+    private int score;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("highscores", ".txt");
+        highScores = HighScores.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        highScores.flush();
+        highScores.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void submitAndFlush() throws InterruptedException, ExecutionException {
+        highScores.submit(score++ % 1000).get();
+    }
+}
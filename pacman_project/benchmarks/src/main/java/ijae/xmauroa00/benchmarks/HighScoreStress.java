@@ -0,0 +1,183 @@
+package ijae.xmauroa00.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ijae.xmauroa00.HighScores;
+import ijae.xmauroa00.Leaderboards;
+
+/**
+ * Checks that game instances saving scores at the same time lose none of them.
+ * Several writer processes, then several writer threads with their own stores, save distinct scores to one
+ * high scores file and one leaderboard. Afterwards the high scores must be the best scores of all writers,
+ * and the leaderboard must hold every score exactly once, ordered from the highest.
+ * Every save must succeed, and once a writer saved its scores the high scores file must have been compacted:
+ * every writer compacts it after {@link HighScores#COMPACT_AFTER} of its own scores, so it holds at most that many
+ * lines per writer besides the high scores.
+ * <p>
+ * Usage, from {@code pacman_project}:
+ * {@code java -cp benchmarks/target/benchmarks.jar ijae.xmauroa00.benchmarks.HighScoreStress [writers] [scores]}
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class HighScoreStress {
+    private static final int CHECKSUM = 0x5eed5eed;
+    private static final int SPEED = 200;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("worker")) {
+            write(Path.of(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int scores = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        boolean passed = check("processes", writers, scores, HighScoreStress::runProcesses)
+            & check("threads", writers, scores, HighScoreStress::runThreads);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * This interface runs the writers of a stress run.
+     */
+    private interface Run {
+        void run(Path dir, int writers, int scores) throws Exception;
+    }
+
+    /**
+     * Runs the writers and checks what they saved.
+     * @param name the name of the run
+     * @param writers the number of writers
+     * @param scores the number of scores saved by every writer
+     * @param run the run
+     * @return true if every save succeeded and no score was lost
+     */
+    private static boolean check(String name, int writers, int scores, Run run) throws Exception {
+        Path dir = Files.createTempDirectory("highscore-stress");
+        long start = System.nanoTime();
+        try {
+            run.run(dir, writers, scores);
+        } catch (Exception e) {
+            System.out.printf("%-9s %d writers x %d scores: FAILED %s%n", name, writers, scores, e.getMessage());
+            return false;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        List<Integer> expected = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            for (int i = 0; i < scores; i++) {
+                expected.add(score(writer, writers, i));
+            }
+        }
+        expected.sort(Collections.reverseOrder());
+
+        HighScores highScores = HighScores.open(dir.resolve("highscores.txt"));
+        highScores.flush(); // the file is read on the writer thread
+        List<Integer> top = highScores.getScores();
+        highScores.close();
+        Leaderboards leaderboards = Leaderboards.open(dir.resolve("leaderboards"));
+        List<Integer> board = new ArrayList<>();
+        for (Leaderboards.Entry entry : leaderboards.top(CHECKSUM, SPEED, Integer.MAX_VALUE)) {
+            board.add(entry.getScore());
+        }
+
+        boolean highScoresPassed = top.equals(expected.subList(0, HighScores.MAX_HIGH_SCORES));
+        boolean boardPassed = board.equals(expected);
+        System.out.printf("%-9s %d writers x %d scores in %d ms: high scores %s, leaderboard %d of %d entries %s%n",
+            name, writers, scores, millis, highScoresPassed ? "ok" : "LOST " + top, board.size(), expected.size(),
+            boardPassed ? "ok" : "LOST");
+        return highScoresPassed && boardPassed;
+    }
+
+    /**
+     * Runs every writer in its own Java process.
+     */
+    private static void runProcesses(Path dir, int writers, int scores) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                HighScoreStress.class.getName(), "worker", dir.toString(), String.valueOf(writer),
+                String.valueOf(writers), String.valueOf(scores)).inheritIO().start());
+        }
+        int failed = 0;
+        for (Process process : processes) {
+            if (process.waitFor() != 0) failed++;
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " writer processes failed");
+        }
+    }
+
+    /**
+     * Runs every writer on its own thread with its own stores, as separate game windows in one process would.
+     */
+    private static void runThreads(Path dir, int writers, int scores) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        ConcurrentLinkedQueue<Exception> errors = new ConcurrentLinkedQueue<>();
+        for (int writer = 0; writer < writers; writer++) {
+            int index = writer;
+            Thread thread = new Thread(() -> {
+                try {
+                    write(dir, index, writers, scores);
+                } catch (Exception e) {
+                    errors.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException(errors.size() + " writer threads failed, first: " + errors.peek());
+        }
+    }
+
+    /**
+     * Saves the scores of one writer, waits until every save is done and checks that the high scores file
+     * was compacted before the writer is closed, as closing compacts it anyway.
+     * @throws ExecutionException if a save failed
+     * @throws IllegalStateException if the high scores file was not compacted
+     */
+    private static void write(Path dir, int writer, int writers, int scores)
+            throws InterruptedException, ExecutionException, IOException {
+        Path file = dir.resolve("highscores.txt");
+        HighScores highScores = HighScores.open(file);
+        Leaderboards leaderboards = Leaderboards.open(dir.resolve("leaderboards"));
+        List<Future<?>> saves = new ArrayList<>();
+        for (int i = 0; i < scores; i++) {
+            int score = score(writer, writers, i);
+            saves.add(highScores.submit(score));
+            saves.add(leaderboards.submit(CHECKSUM, SPEED,
+                new Leaderboards.Entry(score, i, System.currentTimeMillis(), "writer-" + writer)));
+        }
+        for (Future<?> save : saves) {
+            save.get();
+        }
+
+        long lines = Files.readAllLines(file).size();
+        long maxLines = HighScores.MAX_HIGH_SCORES + (long) writers * HighScores.COMPACT_AFTER;
+        highScores.close();
+        leaderboards.close();
+        if (lines > maxLines) {
+            throw new IllegalStateException("writer " + writer + " left " + lines + " lines in the high scores file, "
+                + "at most " + maxLines + " after compaction");
+        }
+    }
+
+    /**
+     * Gets a score saved by a writer, the scores of all writers are distinct and interleaved.
+     */
+    private static int score(int writer, int writers, int i) {
+        return i * writers + writer;
+    }
+}
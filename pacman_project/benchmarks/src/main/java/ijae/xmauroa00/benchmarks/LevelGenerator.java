@@ -0,0 +1,78 @@
+package ijae.xmauroa00.benchmarks;
+
+/**
+ * This class generates level files of any size for the benchmarks.
+ * The levels have a wall border and a wall pillar on every even row and column, so all floor tiles are connected.
+ * The player starts in the top left corner, the key in the bottom left corner and the gate in the bottom right corner.
+ * The ghosts are spread evenly over the floor tiles and every other floor tile holds a point.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class LevelGenerator {
+
+    private LevelGenerator() {
+    }
+
+    /**
+     * Generates a level which can be played to the end.
+     * @param rows the number of rows, at least 5
+     * @param cols the number of columns, at least 5
+     * @param ghosts the number of ghosts
+     * @return the level in the text format of the levels directory
+     */
+    public static String generate(int rows, int cols, int ghosts) {
+        return generate(rows, cols, ghosts, false);
+    }
+
+    /**
+     * Generates a level.
+     * @param rows the number of rows, at least 5
+     * @param cols the number of columns, at least 5
+     * @param ghosts the number of ghosts
+     * @param walledPlayer true to wall the player in, so the ghosts can never reach the player
+     *                     and a game on the level never ends
+     * @return the level in the text format of the levels directory
+     */
+    public static String generate(int rows, int cols, int ghosts, boolean walledPlayer) {
+        if (rows < 5 || cols < 5) {
+            throw new IllegalArgumentException("A generated level needs at least 5 rows and 5 columns");
+        }
+        char[][] tiles = new char[rows][cols];
+        int floorTiles = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                boolean wall = r == 0 || c == 0 || r == rows - 1 || c == cols - 1 || (r % 2 == 0 && c % 2 == 0);
+                tiles[r][c] = wall ? 'W' : ((r + c) % 2 == 1 ? 'o' : '.');
+                if (!wall) floorTiles++;
+            }
+        }
+
+        tiles[1][1] = 'P';
+        if (walledPlayer) {
+            tiles[1][2] = 'W';
+            tiles[2][1] = 'W';
+        }
+        tiles[rows - 2][1] = 'K';
+        tiles[rows - 2][cols - 2] = 'G';
+
+        int stride = Math.max(1, floorTiles / Math.max(1, ghosts));
+        int placed = 0;
+        int floor = 0;
+        for (int r = 1; r < rows - 1 && placed < ghosts; r++) {
+            for (int c = 1; c < cols - 1 && placed < ghosts; c++) {
+                char tile = tiles[r][c];
+                if (tile != 'o' && tile != '.') continue;
+                if (floor++ % stride == 0 && r + c > 4) {
+                    tiles[r][c] = 'C';
+                    placed++;
+                }
+            }
+        }
+
+        StringBuilder level = new StringBuilder(rows * (cols + 1) + 16);
+        level.append(rows).append(' ').append(cols).append('\n');
+        for (char[] row : tiles) {
+            level.append(row).append('\n');
+        }
+        return level.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package ijae.xmauroa00.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ijae.xmauroa00.Level;
+import ijae.xmauroa00.LevelCompiler;
+import ijae.xmauroa00.LevelParser;
+import ijae.xmauroa00.LevelValidator;
+
+/**
+ * Measures parsing and validating a level, as done when a level is started or uploaded,
+ * from a string, streamed from a text file and mapped from a compiled file.
+ * Validating parses the level and flood fills it, the flood fill alone is measured on the parsed level.
+ * The {@code level2} size is the bundled story level, the other sizes are generated levels.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+    @Param({"level2", "64x64", "256x256", "1024x1024"})
+    public String size;
+
+    private String levelData;
+    private Level level;
+    private Path levelFile;
+    private Path compiledFile;
+
+    @Setup
+    public void setup() throws IOException {
+        if (size.startsWith("level")) {
+            levelData = Files.readString(Path.of("levels", size + ".txt"));
+        } else {
+            String[] dimensions = size.split("x");
+            int rows = Integer.parseInt(dimensions[0]);
+            int cols = Integer.parseInt(dimensions[1]);
+            levelData = LevelGenerator.generate(rows, cols, rows * cols / 256 + 1);
+        }
+        levelFile = Files.createTempFile("level", ".txt");
+        Files.writeString(levelFile, levelData);
+        compiledFile = LevelCompiler.compile(levelFile);
+        level = LevelParser.parse(levelData);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(levelFile);
+        Files.deleteIfExists(compiledFile);
+    }
+
+    @Benchmark
+    public Level parse() {
+        return LevelParser.parse(levelData);
+    }
+
+    @Benchmark
+    public Level parseFile() throws IOException {
+        return LevelParser.parse(levelFile);
+    }
+
+    @Benchmark
+    public Level readCompiled() throws IOException {
+        return LevelCompiler.read(compiledFile);
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return LevelValidator.isValidLevelFormat(levelData);
+    }
+
+    @Benchmark
+    public boolean checkReachability() {
+        return LevelValidator.validate(level).isValid();
+    }
+}
@@ -0,0 +1,88 @@
+package ijae.xmauroa00.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ijae.xmauroa00.Direction;
+import ijae.xmauroa00.GameEngine;
+import ijae.xmauroa00.GhostMode;
+import ijae.xmauroa00.GhostWorkers;
+import ijae.xmauroa00.Level;
+import ijae.xmauroa00.LevelParser;
+
+/**
+ * Measures a full game tick (moving the player, moving the ghosts, checking for collisions)
+ * for different board sizes, ghost counts and ghost modes.
+ * With random ghosts the player is walled in on the generated levels, so the game never ends during the measurement.
+ * Chasing ghosts need a path to the player for the distance field to cover the board, so the game is started again
+ * when they catch the player.
+ * Run with {@code -prof gc} to check that a tick does not allocate, and with {@code -p threads=1,8}
+ * to compare computing the ghost intents of chasing ghosts on worker threads.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickBenchmark {
+    private static final Direction[] INPUT = {Direction.UP, Direction.RIGHT, Direction.DOWN, Direction.LEFT};
+
+    @Param({"32", "128", "512"})
+    public int size;
+
+    @Param({"4", "64", "512"})
+    public int ghosts;
+
+    @Param({"RANDOM", "CHASE"})
+    public GhostMode ghostMode;
+
+    @Param({"1"})
+    public int threads;
+
+    private Level level;
+    private GhostWorkers workers;
+    private GameEngine engine;
+    private int input;
+
+    @Setup
+    public void setup() {
+        level = LevelParser.parse(LevelGenerator.generate(size + 1, size + 1, ghosts, ghostMode == GhostMode.RANDOM));
+        workers = threads > 1 ? new GhostWorkers(threads) : null;
+        startGame();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (workers != null) workers.close();
+    }
+
+    private void startGame() {
+        engine = new GameEngine(level);
+        engine.setGhostMode(ghostMode);
+        engine.setWorkers(workers);
+    }
+
+    @Benchmark
+    public GameEngine.Status tick() {
+        engine.setDirection(INPUT[input++ & 3]);
+        GameEngine.Status status = engine.tick();
+        if (status != GameEngine.Status.RUNNING) {
+            startGame();
+        }
+        return status;
+    }
+}
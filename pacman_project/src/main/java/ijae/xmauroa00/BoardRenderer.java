@@ -0,0 +1,86 @@
+package ijae.xmauroa00;
+
+import javafx.scene.Node;
+
+/**
+ * This interface represents a view of the game engine state.
+ * The game board asks the renderer to rebuild its view when a level is loaded
+ * and to render the engine state after every tick.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public interface BoardRenderer {
+    /**
+     * Gets the node which displays the board, so it can be added to the scene.
+     * @return the node of the renderer
+     */
+    Node getNode();
+
+    /**
+     * Builds the view for a newly loaded level.
+     * @param engine the game engine of the new level
+     */
+    void reset(GameEngine engine);
+
+    /**
+     * Renders the tiles changed by the last tick of the game engine.
+     * @param engine the game engine to render
+     */
+    void render(GameEngine engine);
+
+    /**
+     * Renders the player and the ghosts on every display frame.
+     * The sprites are drawn between their positions before and after the last tick,
+     * so they move smoothly instead of jumping a whole tile per tick.
+     * @param engine the game engine to render
+     * @param alpha the progress from the previous position (0) to the current position (1)
+     */
+    void renderSprites(GameEngine engine, double alpha);
+
+    /**
+     * Interpolates the coordinate of a sprite between two positions on the board.
+     * @param from the position before the last tick
+     * @param to the position after the last tick
+     * @param cols the number of columns of the board
+     * @param alpha the progress from the previous position (0) to the current position (1)
+     * @param column true to get the column, false to get the row
+     * @return the column or row, in tiles
+     */
+    static double interpolate(int from, int to, int cols, double alpha, boolean column) {
+        int start = column ? from % cols : from / cols;
+        int end = column ? to % cols : to / cols;
+        return start + (end - start) * alpha;
+    }
+
+    /**
+     * Gets the rotation of the player image for the direction the player is facing.
+     * @param direction the direction the player is facing
+     * @return the rotation in degrees
+     */
+    static double getPlayerRotation(Direction direction) {
+        switch (direction) {
+            case UP:    return 90;
+            case DOWN:  return 270;
+            case RIGHT: return 180;
+            default:    return 0;
+        }
+    }
+
+    /**
+     * Creates the renderer selected by the {@code pacman.renderer} system property.
+     * The value {@code cells} selects the node based {@link CellGridRenderer},
+     * any other value selects the {@link CanvasRenderer}.
+     * @return the renderer
+     */
+    static BoardRenderer create() {
+        return create(System.getProperty("pacman.renderer", "canvas"));
+    }
+
+    /**
+     * Creates a renderer by its name.
+     * @param name either {@code cells} or {@code canvas}
+     * @return the renderer
+     */
+    static BoardRenderer create(String name) {
+        return "cells".equals(name) ? new CellGridRenderer() : new CanvasRenderer();
+    }
+}
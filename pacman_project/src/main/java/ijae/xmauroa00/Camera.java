@@ -0,0 +1,102 @@
+package ijae.xmauroa00;
+
+/**
+ * This class is the camera of a board which is larger than the window.
+ * It shows a view of at most {@link #VIEW_COLS} by {@link #VIEW_ROWS} tiles centered on the player,
+ * stopping at the edges of the level, and a smaller level is shown whole without scrolling.
+ * <p>
+ * The renderers only keep the tiles of a window around the view, the view with {@link #MARGIN} tiles on every side.
+ * The window stays where it is while the view moves inside it, and is moved to the view again when the view
+ * leaves it, so the tiles are drawn or created again only once every few tiles the player moves.
+ * Everything a renderer keeps and draws thus depends on the size of the view and not on the size of the level.
+ * The camera works in tiles, the renderers multiply by the size of their cells.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class Camera {
+    /** The largest number of columns shown. */
+    public static final int VIEW_COLS = 15;
+    /** The largest number of rows shown. */
+    public static final int VIEW_ROWS = 11;
+    /** The number of tiles kept on every side of the view. */
+    public static final int MARGIN = 4;
+
+    private final int cols;
+    private final int rows;
+    private final int viewCols;
+    private final int viewRows;
+    private final int windowCols;
+    private final int windowRows;
+    private double left;
+    private double top;
+    private int windowCol;
+    private int windowRow;
+
+    /**
+     * Constructs a camera for a level, the window is moved to the view by the first call to {@link #follow}.
+     * @param cols the number of columns of the level
+     * @param rows the number of rows of the level
+     */
+    public Camera(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        viewCols = Math.min(cols, VIEW_COLS);
+        viewRows = Math.min(rows, VIEW_ROWS);
+        windowCols = Math.min(cols, viewCols + 2 * MARGIN);
+        windowRows = Math.min(rows, viewRows + 2 * MARGIN);
+        windowCol = -windowCols;
+    }
+
+    /**
+     * This method centers the view on a point, or as close to it as the edges of the level allow,
+     * and moves the window to the view if the view left it.
+     * @param col the column of the point, in tiles, a sprite at column c has its center at c + 0.5
+     * @param row the row of the point, in tiles
+     * @return true if the window moved, so the kept tiles must be drawn or created again
+     */
+    public boolean follow(double col, double row) {
+        left = clamp(col - viewCols / 2.0, cols - viewCols);
+        top = clamp(row - viewRows / 2.0, rows - viewRows);
+        if (left >= windowCol && Math.ceil(left) + viewCols <= windowCol + windowCols
+            && top >= windowRow && Math.ceil(top) + viewRows <= windowRow + windowRows) {
+            return false;
+        }
+        windowCol = (int) clamp(Math.floor(left) - MARGIN, cols - windowCols);
+        windowRow = (int) clamp(Math.floor(top) - MARGIN, rows - windowRows);
+        return true;
+    }
+
+    /**
+     * Checks if a tile is kept, so it is in the window.
+     * @param col the column of the tile
+     * @param row the row of the tile
+     * @return true if the tile is in the window
+     */
+    public boolean isInWindow(int col, int row) {
+        return col >= windowCol && col < windowCol + windowCols && row >= windowRow && row < windowRow + windowRows;
+    }
+
+    /**
+     * Checks if a sprite at a point can be seen, so a part of its tile is in the view.
+     * @param col the column of the top left corner of the sprite, in tiles
+     * @param row the row of the top left corner of the sprite, in tiles
+     * @return true if the sprite can be seen
+     */
+    public boolean isVisible(double col, double row) {
+        return col > left - 1 && col < left + viewCols && row > top - 1 && row < top + viewRows;
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    /** Gets the column of the left edge of the view, in tiles. */
+    public double getLeft() { return left; }
+    /** Gets the row of the top edge of the view, in tiles. */
+    public double getTop() { return top; }
+    public int getViewCols() { return viewCols; }
+    public int getViewRows() { return viewRows; }
+    public int getWindowCol() { return windowCol; }
+    public int getWindowRow() { return windowRow; }
+    public int getWindowCols() { return windowCols; }
+    public int getWindowRows() { return windowRows; }
+}
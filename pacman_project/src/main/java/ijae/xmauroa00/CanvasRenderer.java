@@ -0,0 +1,188 @@
+package ijae.xmauroa00;
+
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * This class renders the board onto two {@link Canvas} layers, one for the tiles and one for the sprites.
+ * Unlike the {@link CellGridRenderer} it does not create a node per tile,
+ * so the number of scene graph nodes and the layout cost stay the same however large the level is.
+ * The board is seen through the view of a {@link Camera} following the player.
+ * The tile layer only holds the tiles of the camera window, it is drawn when the window moves and moved under the
+ * view on every frame, after a tick only the tiles changed by the tick inside the window are repainted.
+ * The sprite layer has the size of the view and is redrawn on every display frame with the sprites which can be seen.
+ * Every image is copied from the {@link SpriteAtlas} at its own size, so no drawing scales or rotates an image.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class CanvasRenderer implements BoardRenderer {
+    private static final int CELL_SIZE = Cell.getCellSize();
+
+    private final Pane layers;
+    private final Rectangle clip = new Rectangle();
+    private final Canvas tileCanvas;
+    private final Canvas spriteCanvas;
+    private final GraphicsContext gc;
+    private final GraphicsContext spriteGc;
+    private final SpriteAtlas atlas = SpriteAtlas.get(CELL_SIZE);
+    private Camera camera;
+    private int[] ghostFrames;
+    private int[] repaintStamps;
+    private int stamp;
+
+    /**
+     * Constructs a new renderer with an empty tile layer and an empty sprite layer above it.
+     */
+    public CanvasRenderer() {
+        tileCanvas = new Canvas();
+        spriteCanvas = new Canvas();
+        gc = tileCanvas.getGraphicsContext2D();
+        spriteGc = spriteCanvas.getGraphicsContext2D();
+        layers = new Pane(tileCanvas, spriteCanvas);
+        layers.setClip(clip);
+    }
+
+    @Override
+    public Node getNode() {
+        return layers;
+    }
+
+    /**
+     * This method creates the camera of the new level, resizes the canvases to its window and view,
+     * picks the frame of every ghost and draws the tiles around the player.
+     * @param engine the game engine of the new level
+     */
+    @Override
+    public void reset(GameEngine engine) {
+        camera = new Camera(engine.getCols(), engine.getRows());
+        tileCanvas.setWidth(camera.getWindowCols() * CELL_SIZE);
+        tileCanvas.setHeight(camera.getWindowRows() * CELL_SIZE);
+
+        double width = camera.getViewCols() * CELL_SIZE;
+        double height = camera.getViewRows() * CELL_SIZE;
+        spriteCanvas.setWidth(width);
+        spriteCanvas.setHeight(height);
+        clip.setWidth(width);
+        clip.setHeight(height);
+        layers.setMinSize(width, height);
+        layers.setPrefSize(width, height);
+        layers.setMaxSize(width, height);
+
+        ghostFrames = new int[engine.getGhostCount()];
+        for (int i = 0; i < ghostFrames.length; i++) {
+            ghostFrames[i] = SpriteAtlas.getGhostFrame(engine.getGhostVariant(i));
+        }
+        repaintStamps = new int[camera.getWindowCols() * camera.getWindowRows()];
+        stamp = 0;
+        renderSprites(engine, 1);
+    }
+
+    /**
+     * This method repaints the tiles changed by the last tick inside the camera window on the tile layer.
+     * @param engine the game engine to render
+     */
+    @Override
+    public void render(GameEngine engine) {
+        int changed = engine.getChangedTileCount();
+        if (changed == 0) return;
+
+        stamp++;
+        int cols = engine.getCols();
+        for (int i = 0; i < changed; i++) {
+            int position = engine.getChangedTile(i);
+            int row = position / cols;
+            int col = position % cols;
+            if (!camera.isInWindow(col, row)) continue;
+            int index = (row - camera.getWindowRow()) * camera.getWindowCols() + col - camera.getWindowCol();
+            if (repaintStamps[index] != stamp) {
+                repaintStamps[index] = stamp;
+                drawTile(engine, row, col);
+            }
+        }
+    }
+
+    /**
+     * This method moves the camera to the interpolated position of the player and the tile layer under the view,
+     * then redraws the sprite layer with the ghosts which can be seen and the player.
+     * @param engine the game engine to render
+     * @param alpha the progress from the previous position (0) to the current position (1)
+     */
+    @Override
+    public void renderSprites(GameEngine engine, double alpha) {
+        int cols = engine.getCols();
+        int from = engine.getPreviousPlayerPosition();
+        int to = engine.getPlayerPosition();
+        double playerCol = BoardRenderer.interpolate(from, to, cols, alpha, true);
+        double playerRow = BoardRenderer.interpolate(from, to, cols, alpha, false);
+        if (camera.follow(playerCol + 0.5, playerRow + 0.5)) {
+            drawWindow(engine);
+        }
+        double viewX = Math.round(camera.getLeft() * CELL_SIZE);
+        double viewY = Math.round(camera.getTop() * CELL_SIZE);
+        tileCanvas.setTranslateX(camera.getWindowCol() * CELL_SIZE - viewX);
+        tileCanvas.setTranslateY(camera.getWindowRow() * CELL_SIZE - viewY);
+
+        spriteGc.clearRect(0, 0, spriteCanvas.getWidth(), spriteCanvas.getHeight());
+        for (int g = 0; g < ghostFrames.length; g++) {
+            int ghostFrom = engine.getPreviousGhostPosition(g);
+            int ghostTo = engine.getGhostPosition(g);
+            double col = BoardRenderer.interpolate(ghostFrom, ghostTo, cols, alpha, true);
+            double row = BoardRenderer.interpolate(ghostFrom, ghostTo, cols, alpha, false);
+            if (camera.isVisible(col, row)) {
+                atlas.draw(spriteGc, ghostFrames[g], col * CELL_SIZE - viewX, row * CELL_SIZE - viewY);
+            }
+        }
+        atlas.draw(spriteGc, SpriteAtlas.getPlayerFrame(engine.getPlayerFacing()),
+            playerCol * CELL_SIZE - viewX, playerRow * CELL_SIZE - viewY);
+    }
+
+    /**
+     * This method draws every tile of the camera window, after the window moved.
+     * @param engine the game engine to render
+     */
+    private void drawWindow(GameEngine engine) {
+        int lastRow = camera.getWindowRow() + camera.getWindowRows();
+        int lastCol = camera.getWindowCol() + camera.getWindowCols();
+        for (int row = camera.getWindowRow(); row < lastRow; row++) {
+            for (int col = camera.getWindowCol(); col < lastCol; col++) {
+                drawTile(engine, row, col);
+            }
+        }
+    }
+
+    /**
+     * This method draws a single tile of the camera window with its items,
+     * the player and ghosts are drawn on the sprite layer.
+     * @param engine the game engine to render
+     * @param row the row of the tile
+     * @param col the column of the tile
+     */
+    private void drawTile(GameEngine engine, int row, int col) {
+        double x = (col - camera.getWindowCol()) * CELL_SIZE;
+        double y = (row - camera.getWindowRow()) * CELL_SIZE;
+        byte tile = engine.getTile(row * engine.getCols() + col);
+
+        gc.setFill(Color.BLACK);
+        gc.fillRect(x, y, CELL_SIZE, CELL_SIZE);
+        gc.setStroke(Color.BLUE);
+        gc.strokeRect(x + 0.5, y + 0.5, CELL_SIZE - 1, CELL_SIZE - 1);
+
+        if ((tile & Level.WALL) != 0) {
+            gc.setFill(Color.BLUE);
+            gc.fillRect(x, y, CELL_SIZE, CELL_SIZE);
+        }
+        if ((tile & Level.GATE) != 0) {
+            atlas.draw(gc, SpriteAtlas.GATE, x, y);
+        }
+        if ((tile & Level.KEY) != 0) {
+            atlas.draw(gc, SpriteAtlas.KEY, x, y);
+        }
+        if ((tile & Level.POINT) != 0) {
+            gc.setFill(Color.WHITE);
+            gc.fillRect(x + CELL_SIZE * 3 / 8, y + CELL_SIZE * 3 / 8, CELL_SIZE / 4, CELL_SIZE / 4);
+        }
+    }
+}
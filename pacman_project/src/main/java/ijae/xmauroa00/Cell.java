@@ -1,6 +1,5 @@
 package ijae.xmauroa00;
 
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
@@ -8,7 +7,8 @@ import javafx.scene.shape.Rectangle;
 
 /**
  * Represents a single cell in the Pacman game board.
- * Each cell can contain various game elements such as walls, gates, players, ghosts, keys, or points.
+ * Each cell can contain various game elements such as walls, gates, keys, or points.
+ * The player and the ghosts are not part of a cell, they are sprites moved over the cells by the {@link CellGridRenderer}.
  * The cell extends StackPane to allow layering of multiple visual elements.
  *
  * @author Arcangelo Mauro - xmauroa00
@@ -16,18 +16,13 @@ import javafx.scene.shape.Rectangle;
 public class Cell extends StackPane {
     private boolean isWall;
     private boolean isGate;
-    private boolean hasPlayer;
-    private boolean hasGhost;
     private boolean hasKey;
     private boolean hasPoint;
     
     private static final int CELL_SIZE = 60;
-    private static final Image playerImage = new Image("file:Images/PacMan.png");
-    private static final Image orangeGhostImage = new Image("file:Images/orange_ghost.png");
-    private static final Image redGhostImage = new Image("file:Images/red_ghost.png");
-    private static final Image keyImage = new Image("file:Images/key.png");
-    private static final Image gateImage = new Image("file:Images/gate.png");
     private Rectangle background;
+    private Rectangle point;
+    private ImageView keyView;
     
     /**
      * Constructs a new empty cell with default black background and blue border.
@@ -55,66 +50,22 @@ public class Cell extends StackPane {
     /**
      * Converts this cell into a gate cell.
      * A gate can be opened with a key and is represented by 'G' in the map file.
-     * The gate is visualized using the gate image asset.
+     * The gate is visualized using the gate frame of the {@link SpriteAtlas}.
      */
     public void setGate() {
         isGate = true;
-        ImageView gateView = new ImageView(gateImage);
-        gateView.setFitWidth(CELL_SIZE);
-        gateView.setFitHeight(CELL_SIZE);
-        getChildren().add(gateView);
-    }
-    
-    /**
-     * Places the player character in this cell.
-     * The player is represented by 'P' in the map file and is visualized
-     * using the Pacman image asset.
-     */
-    public void setPlayer() {
-        hasPlayer = true;
-        ImageView playerView = new ImageView(playerImage);
-        playerView.setFitWidth(CELL_SIZE);
-        playerView.setFitHeight(CELL_SIZE);
-        getChildren().add(playerView);
-    }
-    
-    /**
-     * Places a ghost in this cell.
-     * Ghosts are represented by 'R' (red) or 'O' (orange) in the map file.
-     * The ghost type is randomly selected between red and orange variants.
-     * 
-     * @see #getRandomGhostImage()
-     */
-    public void setGhost() {
-        hasGhost = true;
-        Image ghostImage = getRandomGhostImage();
-        ImageView ghostView = new ImageView(ghostImage);
-        ghostView.setFitWidth(CELL_SIZE);
-        ghostView.setFitHeight(CELL_SIZE);
-        getChildren().add(ghostView);
-    }
-    
-    /**
-     * Selects a random ghost image from the available ghost types.
-     *
-     * @return Image - Either a red or orange ghost image
-     */
-    private Image getRandomGhostImage() {
-        Image[] ghostImages = {redGhostImage, orangeGhostImage};
-        int randomIndex = (int) (Math.random() * ghostImages.length);
-        return ghostImages[randomIndex];
+        getChildren().add(SpriteAtlas.get(CELL_SIZE).createView(SpriteAtlas.GATE));
     }
     
     /**
      * Places a key item in this cell.
      * Keys are represented by 'K' in the map file and can be collected
      * by the player to open gates.
+     * The key frame of the {@link SpriteAtlas} already holds the key at half the size of the cell.
      */
     public void setKey() {
         hasKey = true;
-        ImageView keyView = new ImageView(keyImage);
-        keyView.setFitWidth(CELL_SIZE/2);
-        keyView.setFitHeight(CELL_SIZE/2);
+        keyView = SpriteAtlas.get(CELL_SIZE).createView(SpriteAtlas.KEY);
         getChildren().add(keyView);
     }
     
@@ -125,7 +76,7 @@ public class Cell extends StackPane {
      */
     public void setPoint() {
         hasPoint = true;
-        Rectangle point = new Rectangle(CELL_SIZE/4, CELL_SIZE/4);
+        point = new Rectangle(CELL_SIZE/4, CELL_SIZE/4);
         point.setFill(Color.WHITE);
         getChildren().add(point);
     }
@@ -147,7 +98,8 @@ public class Cell extends StackPane {
      */
     public void removePoint() {
         hasPoint = false;
-        getChildren().removeIf(node -> node instanceof Rectangle && ((Rectangle) node).getFill() == Color.WHITE);
+        getChildren().remove(point);
+        point = null;
     }
     
     /**
@@ -155,45 +107,13 @@ public class Cell extends StackPane {
      */
     public void removeKey() {
         hasKey = false;
-        getChildren().removeIf(node -> node instanceof ImageView && ((ImageView) node).getImage() == keyImage);
+        getChildren().remove(keyView);
+        keyView = null;
     }
     
     public boolean isWall() { return isWall; }
     public boolean isGate() { return isGate; }
-    public boolean hasPlayer() { return hasPlayer; }
-    public boolean hasGhost() { return hasGhost; }
     public boolean hasKey() { return hasKey; }
     public boolean hasPoint() { return hasPoint; }
     public static int getCellSize() { return CELL_SIZE; }
-    public static Image getPlayerImage() { return playerImage; }
-    
-    /**
-     * Gets the current ghost image displayed in this cell, if any.
-     *
-     * @return Image - The current ghost image, or null if no ghost is present
-     */
-    public Image getGhostImage() {
-        for (javafx.scene.Node node : getChildren()) {
-            if (node instanceof ImageView) {
-                ImageView imageView = (ImageView) node;
-                if (imageView.getImage() == redGhostImage || imageView.getImage() == orangeGhostImage) {
-                    return imageView.getImage();
-                }
-            }
-        }
-        return null;
-    }
-    
-    /**
-     * Places a specific ghost type in this cell.
-     *
-     * @param ghostImage The specific ghost image to use (red or orange)
-     */
-    public void setGhostWithImage(Image ghostImage) {
-        hasGhost = true;
-        ImageView ghostView = new ImageView(ghostImage);
-        ghostView.setFitWidth(CELL_SIZE);
-        ghostView.setFitHeight(CELL_SIZE);
-        getChildren().add(ghostView);
-    }
 }
\ No newline at end of file
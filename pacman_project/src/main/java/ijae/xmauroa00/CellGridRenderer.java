@@ -0,0 +1,198 @@
+package ijae.xmauroa00;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * This class renders the board as a grid of {@link Cell} nodes, one per tile.
+ * It creates many scene graph nodes, the {@link CanvasRenderer} is used by default
+ * and this renderer is kept to compare both with {@link RenderStats}.
+ * The board is seen through the view of a {@link Camera} following the player, the grid only holds the cells of the
+ * camera window and is created again when the window moves. The sprites are a pool of nodes above the grid,
+ * one for every sprite which can be seen, so the number of nodes depends on the size of the view.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class CellGridRenderer extends GridPane implements BoardRenderer {
+    private static final int CELL_SIZE = Cell.getCellSize();
+
+    private final Pane spriteLayer = new Pane();
+    private final Pane viewport = new Pane(this, spriteLayer);
+    private final Rectangle clip = new Rectangle();
+    private final List<ImageView> ghostSprites = new ArrayList<>();
+    private final SpriteAtlas atlas = SpriteAtlas.get(CELL_SIZE);
+    private Camera camera;
+    private Cell[][] board;
+    private int cols;
+    private double cellPitch;
+    private ImageView playerSprite;
+
+    /**
+     * Constructs a new renderer with an empty grid and an empty sprite layer above it.
+     */
+    public CellGridRenderer() {
+        spriteLayer.setMouseTransparent(true);
+        viewport.setClip(clip);
+    }
+
+    @Override
+    public Node getNode() {
+        return viewport;
+    }
+
+    /**
+     * This method creates the camera of the new level, the cells around the player and the sprite of the player.
+     * @param engine the game engine of the new level
+     */
+    @Override
+    public void reset(GameEngine engine) {
+        cols = engine.getCols();
+        camera = new Camera(cols, engine.getRows());
+        cellPitch = new Cell().prefWidth(-1);
+
+        spriteLayer.getChildren().clear();
+        ghostSprites.clear();
+        playerSprite = createSprite(SpriteAtlas.getPlayerFrame(engine.getPlayerFacing()));
+        renderSprites(engine, 1);
+
+        double width = camera.getViewCols() * cellPitch;
+        double height = camera.getViewRows() * cellPitch;
+        clip.setWidth(width);
+        clip.setHeight(height);
+        viewport.setMinSize(width, height);
+        viewport.setPrefSize(width, height);
+        viewport.setMaxSize(width, height);
+    }
+
+    /**
+     * This method updates the cells changed by the last tick inside the camera window.
+     * The existing cells are reused, so a tick does not create or re-add any node.
+     * @param engine the game engine to render
+     */
+    @Override
+    public void render(GameEngine engine) {
+        for (int i = 0; i < engine.getChangedTileCount(); i++) {
+            int position = engine.getChangedTile(i);
+            int row = position / cols;
+            int col = position % cols;
+            if (!camera.isInWindow(col, row)) continue;
+            Cell cell = board[row - camera.getWindowRow()][col - camera.getWindowCol()];
+            byte tile = engine.getTile(position);
+            if (cell.hasPoint() && (tile & Level.POINT) == 0) cell.removePoint();
+            if (cell.hasKey() && (tile & Level.KEY) == 0) cell.removeKey();
+        }
+    }
+
+    /**
+     * This method moves the camera to the interpolated position of the player and the grid under the view,
+     * then places a sprite on every ghost which can be seen and on the player.
+     * The player is turned by showing its frame for the direction it faces, so the sprite is never rotated.
+     * @param engine the game engine to render
+     * @param alpha the progress from the previous position (0) to the current position (1)
+     */
+    @Override
+    public void renderSprites(GameEngine engine, double alpha) {
+        int from = engine.getPreviousPlayerPosition();
+        int to = engine.getPlayerPosition();
+        double playerCol = BoardRenderer.interpolate(from, to, cols, alpha, true);
+        double playerRow = BoardRenderer.interpolate(from, to, cols, alpha, false);
+        if (camera.follow(playerCol + 0.5, playerRow + 0.5)) {
+            createWindow(engine);
+        }
+        double viewX = Math.round(camera.getLeft() * cellPitch);
+        double viewY = Math.round(camera.getTop() * cellPitch);
+        setTranslateX(camera.getWindowCol() * cellPitch - viewX);
+        setTranslateY(camera.getWindowRow() * cellPitch - viewY);
+
+        int shown = 0;
+        for (int g = 0; g < engine.getGhostCount(); g++) {
+            int ghostFrom = engine.getPreviousGhostPosition(g);
+            int ghostTo = engine.getGhostPosition(g);
+            double col = BoardRenderer.interpolate(ghostFrom, ghostTo, cols, alpha, true);
+            double row = BoardRenderer.interpolate(ghostFrom, ghostTo, cols, alpha, false);
+            if (!camera.isVisible(col, row)) continue;
+            int frame = SpriteAtlas.getGhostFrame(engine.getGhostVariant(g));
+            if (shown == ghostSprites.size()) {
+                ghostSprites.add(createSprite(frame));
+                playerSprite.toFront();
+            }
+            ImageView sprite = ghostSprites.get(shown++);
+            sprite.setViewport(atlas.getViewport(frame));
+            sprite.setVisible(true);
+            placeSprite(sprite, col, row, viewX, viewY);
+        }
+        for (int i = shown; i < ghostSprites.size(); i++) {
+            ghostSprites.get(i).setVisible(false);
+        }
+
+        playerSprite.setViewport(atlas.getViewport(SpriteAtlas.getPlayerFrame(engine.getPlayerFacing())));
+        placeSprite(playerSprite, playerCol, playerRow, viewX, viewY);
+    }
+
+    /**
+     * This method creates the cells of the camera window, after the window moved.
+     * @param engine the game engine to render
+     */
+    private void createWindow(GameEngine engine) {
+        getChildren().clear();
+        int windowRow = camera.getWindowRow();
+        int windowCol = camera.getWindowCol();
+        board = new Cell[camera.getWindowRows()][camera.getWindowCols()];
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board[i].length; j++) {
+                board[i][j] = createCell(engine.getTile((windowRow + i) * cols + windowCol + j), i, j);
+            }
+        }
+    }
+
+    /**
+     * This method creates a cell.
+     * It creates a cell for the given tile flags and adds it to the grid.
+     * @param tile the tile flags of the cell
+     * @param row the row of the cell in the grid
+     * @param col the column of the cell in the grid
+     * @return the cell
+     */
+    private Cell createCell(byte tile, int row, int col) {
+        Cell cell = new Cell();
+
+        if ((tile & Level.WALL) != 0) cell.setWall();
+        else if ((tile & Level.GATE) != 0) cell.setGate();
+        else if ((tile & Level.KEY) != 0) cell.setKey();
+        else if ((tile & Level.POINT) != 0) cell.setPoint();
+        else cell.setEmpty();
+
+        add(cell, col, row);
+        return cell;
+    }
+
+    /**
+     * This method creates a sprite drawn above the cells.
+     * @param frame the frame of the sprite in the {@link SpriteAtlas}
+     * @return the sprite
+     */
+    private ImageView createSprite(int frame) {
+        ImageView sprite = atlas.createView(frame);
+        sprite.setManaged(false);
+        spriteLayer.getChildren().add(sprite);
+        return sprite;
+    }
+
+    /**
+     * This method moves a sprite to the center of a tile in the view.
+     * @param sprite the sprite to move
+     * @param col the column of the sprite, in tiles
+     * @param row the row of the sprite, in tiles
+     * @param viewX the left edge of the view, in pixels
+     * @param viewY the top edge of the view, in pixels
+     */
+    private void placeSprite(ImageView sprite, double col, double row, double viewX, double viewY) {
+        double offset = (cellPitch - CELL_SIZE) / 2;
+        sprite.relocate(col * cellPitch - viewX + offset, row * cellPitch - viewY + offset);
+    }
+}
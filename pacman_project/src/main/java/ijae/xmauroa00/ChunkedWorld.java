@@ -0,0 +1,314 @@
+package ijae.xmauroa00;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class holds the tiles of a game and the number of ghosts on every tile, in square chunks of
+ * {@link #CHUNK_SIZE} by {@link #CHUNK_SIZE} tiles.
+ * A chunk is read from the {@link Level} the first time one of its tiles is used, so a game only holds the chunks
+ * around the player and the ghosts. A compiled level is mapped from its file by the {@link LevelCompiler}
+ * without reading its tiles, so the parts of a huge level which are never played are not read from the disk either.
+ * A text level is parsed into tiles on the heap by the {@link LevelParser}, so it is read whole, and the chunks
+ * only bound the tiles a game changes. {@link LevelCompiler#load(java.nio.file.Path)} plays the compiled file
+ * of a text level once it is written, so only the first load of a huge text level reads it whole.
+ * <p>
+ * When more chunks than the capacity are loaded, the least recently used chunk without a ghost is evicted.
+ * The points and keys taken from an evicted chunk are kept as a short list of the items taken from each tile,
+ * and taken again when the chunk is loaded, so the memory of a game grows with what the player collected
+ * and not with the size of the level. A chunk holding a ghost is never evicted.
+ * Only the items can be taken from a tile, the rest of the level does not change during a game.
+ * <p>
+ * A world is used by one thread at a time, reading a tile can load a chunk.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class ChunkedWorld implements DistanceField.Tiles {
+    /** The number of rows and columns of a chunk. */
+    public static final int CHUNK_SIZE = 64;
+    /** The number of chunks a world keeps loaded, a megabyte of tiles, unless more of them hold ghosts. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final int CHUNK_BITS = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int OFFSET_BITS = 2 * CHUNK_BITS;
+    private static final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+
+    private final ByteBuffer source;
+    private final int rows;
+    private final int cols;
+    private final int chunkCols;
+    private final int capacity;
+    private final byte[][] tiles;
+    private final byte[][] ghosts;
+    private final int[] ghostTotals;
+    private final long[] lastUses;
+    private final boolean[] changed;
+    private final int[][] takenItems;
+    private final byte[] original = new byte[CHUNK_SIZE * CHUNK_SIZE];
+    private int[] loaded = new int[16];
+    private int loadedCount;
+    private long clock;
+    private long loads;
+    private long evictions;
+
+    /**
+     * Constructs a world for a level with the {@link #DEFAULT_CAPACITY}, no chunk is loaded yet.
+     * @param level the level, it is not changed
+     */
+    public ChunkedWorld(Level level) {
+        this(level, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a world for a level, no chunk is loaded yet.
+     * @param level the level, it is not changed
+     * @param capacity the number of chunks kept loaded, chunks holding a ghost are kept even beyond it
+     */
+    public ChunkedWorld(Level level, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("A world needs a capacity of at least one chunk");
+        }
+        source = level.getTiles();
+        rows = level.getRows();
+        cols = level.getCols();
+        chunkCols = (cols + CHUNK_MASK) >>> CHUNK_BITS;
+        int chunks = ((rows + CHUNK_MASK) >>> CHUNK_BITS) * chunkCols;
+        this.capacity = capacity;
+        tiles = new byte[chunks][];
+        ghosts = new byte[chunks][];
+        ghostTotals = new int[chunks];
+        lastUses = new long[chunks];
+        changed = new boolean[chunks];
+        takenItems = new int[chunks][];
+    }
+
+    /**
+     * Gets the flags of a tile, loading its chunk if needed.
+     * @param position the position of the tile
+     * @return the flags of the tile, see {@link Level}
+     */
+    public byte getTile(int position) {
+        int location = locate(position);
+        return use(location >>> OFFSET_BITS)[location & OFFSET_MASK];
+    }
+
+    /**
+     * This method copies the flags of a run of tiles on one row, a part of a chunk at a time.
+     * @param position the position of the first tile
+     * @param target the array to copy the flags into
+     * @param offset the index in the array of the first tile
+     * @param length the number of tiles, they must be on the row of the first tile
+     */
+    @Override
+    public void copyRow(int position, byte[] target, int offset, int length) {
+        while (length > 0) {
+            int location = locate(position);
+            int chunkOffset = location & OFFSET_MASK;
+            int run = Math.min(length, CHUNK_SIZE - (chunkOffset & CHUNK_MASK));
+            System.arraycopy(use(location >>> OFFSET_BITS), chunkOffset, target, offset, run);
+            position += run;
+            offset += run;
+            length -= run;
+        }
+    }
+
+    /**
+     * This method takes items from a tile, clearing their flags.
+     * @param position the position of the tile
+     * @param items the flags of the items, {@link Level#POINT} or {@link Level#KEY}
+     */
+    public void takeItems(int position, byte items) {
+        int location = locate(position);
+        int chunk = location >>> OFFSET_BITS;
+        use(chunk)[location & OFFSET_MASK] &= (byte) ~items;
+        changed[chunk] = true;
+    }
+
+    /**
+     * Checks if a ghost is on a tile, without loading its chunk, a chunk holding a ghost is always loaded.
+     * @param position the position of the tile
+     * @return true if a ghost is on the tile
+     */
+    public boolean hasGhostAt(int position) {
+        int location = locate(position);
+        byte[] chunkGhosts = ghosts[location >>> OFFSET_BITS];
+        return chunkGhosts != null && chunkGhosts[location & OFFSET_MASK] != 0;
+    }
+
+    /**
+     * This method counts a ghost entering a tile, its chunk is kept loaded while a ghost is on it.
+     * @param position the position of the tile
+     */
+    public void addGhost(int position) {
+        int location = locate(position);
+        int chunk = location >>> OFFSET_BITS;
+        use(chunk);
+        if (ghosts[chunk] == null) {
+            ghosts[chunk] = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        ghosts[chunk][location & OFFSET_MASK]++;
+        ghostTotals[chunk]++;
+    }
+
+    /**
+     * This method counts a ghost leaving a tile.
+     * @param position the position of the tile, a ghost must be on it
+     */
+    public void removeGhost(int position) {
+        int location = locate(position);
+        int chunk = location >>> OFFSET_BITS;
+        ghosts[chunk][location & OFFSET_MASK]--;
+        ghostTotals[chunk]--;
+    }
+
+    /**
+     * Gets the tiles of a chunk, loading it if needed, and marks it as the most recently used.
+     * @param chunk the index of the chunk
+     * @return the tiles of the chunk
+     */
+    private byte[] use(int chunk) {
+        byte[] chunkTiles = tiles[chunk];
+        if (chunkTiles == null) {
+            chunkTiles = load(chunk);
+        }
+        lastUses[chunk] = ++clock;
+        return chunkTiles;
+    }
+
+    /**
+     * Loads a chunk from the level and takes the items which were taken before it was evicted.
+     * The tiles array of an evicted chunk is reused when the capacity is reached.
+     * @param chunk the index of the chunk
+     * @return the tiles of the chunk
+     */
+    private byte[] load(int chunk) {
+        byte[] chunkTiles = loadedCount >= capacity ? evict() : null;
+        if (chunkTiles == null) {
+            chunkTiles = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        }
+        read(chunk, chunkTiles);
+        int[] taken = takenItems[chunk];
+        if (taken != null) {
+            for (int entry : taken) {
+                chunkTiles[entry >>> 8] &= (byte) ~entry;
+            }
+            takenItems[chunk] = null;
+            changed[chunk] = true;
+        }
+
+        tiles[chunk] = chunkTiles;
+        if (loadedCount == loaded.length) {
+            loaded = Arrays.copyOf(loaded, loadedCount * 2);
+        }
+        loaded[loadedCount++] = chunk;
+        loads++;
+        return chunkTiles;
+    }
+
+    /**
+     * Evicts the least recently used chunk without a ghost, keeping the items taken from it.
+     * @return the tiles array of the evicted chunk, or null if every loaded chunk holds a ghost
+     */
+    private byte[] evict() {
+        int victim = -1;
+        for (int i = 0; i < loadedCount; i++) {
+            int chunk = loaded[i];
+            if (ghostTotals[chunk] == 0 && (victim < 0 || lastUses[chunk] < lastUses[loaded[victim]])) {
+                victim = i;
+            }
+        }
+        if (victim < 0) return null;
+
+        int chunk = loaded[victim];
+        loaded[victim] = loaded[--loadedCount];
+        byte[] chunkTiles = tiles[chunk];
+        if (changed[chunk]) {
+            takenItems[chunk] = findTakenItems(chunk, chunkTiles);
+            changed[chunk] = false;
+        }
+        tiles[chunk] = null;
+        ghosts[chunk] = null;
+        evictions++;
+        return chunkTiles;
+    }
+
+    /**
+     * Lists the items taken from the tiles of a chunk, comparing them with the level.
+     * @param chunk the index of the chunk
+     * @param chunkTiles the tiles of the chunk
+     * @return the offset of every tile shifted left by 8 bits with the taken flags in the low bits,
+     *         or null if no item was taken
+     */
+    private int[] findTakenItems(int chunk, byte[] chunkTiles) {
+        read(chunk, original);
+        int[] taken = new int[16];
+        int count = 0;
+        int height = getHeight(chunk);
+        int width = getWidth(chunk);
+        for (int row = 0; row < height; row++) {
+            for (int offset = row << CHUNK_BITS, end = offset + width; offset < end; offset++) {
+                int items = original[offset] & ~chunkTiles[offset] & 0xFF;
+                if (items == 0) continue;
+                if (count == taken.length) {
+                    taken = Arrays.copyOf(taken, count * 2);
+                }
+                taken[count++] = offset << 8 | items;
+            }
+        }
+        return count == 0 ? null : Arrays.copyOf(taken, count);
+    }
+
+    /**
+     * Reads the tiles of a chunk from the level, a row of the chunk at a time.
+     * @param chunk the index of the chunk
+     * @param chunkTiles the array to read the tiles into
+     */
+    private void read(int chunk, byte[] chunkTiles) {
+        int firstRow = chunk / chunkCols << CHUNK_BITS;
+        int firstCol = chunk % chunkCols << CHUNK_BITS;
+        int height = getHeight(chunk);
+        int width = getWidth(chunk);
+        for (int row = 0; row < height; row++) {
+            source.position((firstRow + row) * cols + firstCol);
+            source.get(chunkTiles, row << CHUNK_BITS, width);
+        }
+    }
+
+    private int getHeight(int chunk) {
+        return Math.min(CHUNK_SIZE, rows - (chunk / chunkCols << CHUNK_BITS));
+    }
+
+    private int getWidth(int chunk) {
+        return Math.min(CHUNK_SIZE, cols - (chunk % chunkCols << CHUNK_BITS));
+    }
+
+    /**
+     * Finds the chunk of a tile and the offset of the tile in the chunk, with a single division.
+     * @param position the position of the tile
+     * @return the index of the chunk shifted left by {@link #OFFSET_BITS} with the offset in the low bits
+     */
+    private int locate(int position) {
+        int row = position / cols;
+        int col = position - row * cols;
+        int chunk = (row >>> CHUNK_BITS) * chunkCols + (col >>> CHUNK_BITS);
+        return chunk << OFFSET_BITS | (row & CHUNK_MASK) << CHUNK_BITS | col & CHUNK_MASK;
+    }
+
+    /**
+     * Gets the number of chunks loaded now.
+     * @return the number of loaded chunks
+     */
+    public int getLoadedChunkCount() { return loadedCount; }
+
+    /**
+     * Gets the number of times a chunk was loaded, a chunk loaded again after it was evicted counts again.
+     * @return the number of loads
+     */
+    public long getLoadCount() { return loads; }
+
+    /**
+     * Gets the number of times a chunk was evicted.
+     * @return the number of evictions
+     */
+    public long getEvictionCount() { return evictions; }
+}
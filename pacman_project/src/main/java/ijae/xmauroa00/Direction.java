@@ -0,0 +1,9 @@
+package ijae.xmauroa00;
+
+/**
+ * This enum represents the possible directions the player and the ghosts can move.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public enum Direction {
+    UP, DOWN, LEFT, RIGHT, NONE
+}
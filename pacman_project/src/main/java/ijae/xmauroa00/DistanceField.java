@@ -0,0 +1,152 @@
+package ijae.xmauroa00;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the distance of every tile from one source tile, counted in steps over the walkable tiles.
+ * It is computed with a breadth-first search from the source, so the ghosts chasing the player share
+ * one search per tick: a ghost follows the distance down to the player, whatever the number of ghosts is.
+ * The search can be limited to a range of rows and columns around the source, it then only reads and holds
+ * the tiles of that square window, so its cost does not depend on the size of the board.
+ * The tiles of the window are copied a run of a row at a time before the search, so the search itself
+ * only reads a small array.
+ * The arrays are allocated once for the window, a search does not allocate and does not clear them,
+ * the distances of the current search are told apart by a stamp.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class DistanceField {
+    /** The distance of a tile which can not be reached from the source. */
+    public static final int UNREACHABLE = -1;
+
+    /**
+     * This interface reads the flags of the tiles of a board, see {@link Level}.
+     */
+    public interface Tiles {
+        /**
+         * This method copies the flags of a run of tiles on one row.
+         * @param position the position of the first tile
+         * @param target the array to copy the flags into
+         * @param offset the index in the array of the first tile
+         * @param length the number of tiles
+         */
+        void copyRow(int position, byte[] target, int offset, int length);
+    }
+
+    private final int rows;
+    private final int cols;
+    private final int windowRows;
+    private final int windowCols;
+    private final int[] distances;
+    private final int[] stamps;
+    private final int[] queue;
+    private final byte[] windowTiles;
+    private final Tiles arrayTiles = this::copyArrayRow;
+    private byte[] array;
+    private int top;
+    private int left;
+    private int stamp;
+
+    /**
+     * Constructs a distance field searching the whole board.
+     * @param rows the number of rows of the board
+     * @param cols the number of columns of the board
+     */
+    public DistanceField(int rows, int cols) {
+        this(rows, cols, Math.max(rows, cols));
+    }
+
+    /**
+     * Constructs a distance field searching the tiles at most a number of rows and columns away from the source,
+     * a tile outside of this window is {@link #UNREACHABLE}. The window is moved inside the board near its edges.
+     * @param rows the number of rows of the board
+     * @param cols the number of columns of the board
+     * @param range the number of rows and columns searched on every side of the source
+     */
+    public DistanceField(int rows, int cols, int range) {
+        this.rows = rows;
+        this.cols = cols;
+        windowRows = (int) Math.min(rows, 2L * range + 1);
+        windowCols = (int) Math.min(cols, 2L * range + 1);
+        distances = new int[windowRows * windowCols];
+        stamps = new int[windowRows * windowCols];
+        queue = new int[windowRows * windowCols];
+        windowTiles = new byte[windowRows * windowCols];
+    }
+
+    /**
+     * This method computes the distance of every tile from the source.
+     * A tile is walkable if it is not a wall, and a gate is only walkable when it is open.
+     * @param tiles the tile flags of the board row by row, see {@link Level}
+     * @param source the position of the source tile
+     * @param gateOpen true if the gate can be walked through
+     */
+    public void compute(byte[] tiles, int source, boolean gateOpen) {
+        array = tiles;
+        compute(arrayTiles, source, gateOpen);
+    }
+
+    /**
+     * This method computes the distance of every tile of the window from the source.
+     * A tile is walkable if it is not a wall, and a gate is only walkable when it is open.
+     * @param tiles the tiles of the board
+     * @param source the position of the source tile
+     * @param gateOpen true if the gate can be walked through
+     */
+    public void compute(Tiles tiles, int source, boolean gateOpen) {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        top = Math.max(0, Math.min(source / cols - windowRows / 2, rows - windowRows));
+        left = Math.max(0, Math.min(source % cols - windowCols / 2, cols - windowCols));
+        for (int row = 0; row < windowRows; row++) {
+            tiles.copyRow((top + row) * cols + left, windowTiles, row * windowCols, windowCols);
+        }
+        byte blocked = gateOpen ? Level.WALL : Level.WALL | Level.GATE;
+        int head = 0;
+        int tail = 0;
+        int start = (source / cols - top) * windowCols + source % cols - left;
+        stamps[start] = stamp;
+        distances[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int index = queue[head++];
+            int next = distances[index] + 1;
+            int col = index % windowCols;
+            if (index >= windowCols) tail = visit(blocked, index - windowCols, next, tail);
+            if (index + windowCols < windowTiles.length) tail = visit(blocked, index + windowCols, next, tail);
+            if (col != 0) tail = visit(blocked, index - 1, next, tail);
+            if (col != windowCols - 1) tail = visit(blocked, index + 1, next, tail);
+        }
+    }
+
+    /**
+     * Visits a neighbour of a tile taken from the queue, adding it to the queue if it is walkable and new.
+     * @return the new end of the queue
+     */
+    private int visit(byte blocked, int index, int distance, int tail) {
+        if (stamps[index] == stamp || (windowTiles[index] & blocked) != 0) return tail;
+        stamps[index] = stamp;
+        distances[index] = distance;
+        queue[tail] = index;
+        return tail + 1;
+    }
+
+    private void copyArrayRow(int position, byte[] target, int offset, int length) {
+        System.arraycopy(array, position, target, offset, length);
+    }
+
+    /**
+     * Gets the distance of a tile from the source of the last search.
+     * @param position the position of the tile
+     * @return the number of steps from the source, or {@link #UNREACHABLE}
+     */
+    public int getDistance(int position) {
+        int row = position / cols - top;
+        int col = position % cols - left;
+        if (row < 0 || row >= windowRows || col < 0 || col >= windowCols) return UNREACHABLE;
+        int index = row * windowCols + col;
+        return stamps[index] == stamp ? distances[index] : UNREACHABLE;
+    }
+}
@@ -0,0 +1,77 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class runs file updates under an exclusive lock shared by all game instances on the machine.
+ * The lock is taken on a separate lock file, as the files it guards are replaced by renaming them.
+ * A {@link FileLock} is held by the whole Java virtual machine, so threads of the same game are ordered
+ * by a monitor for the lock file before it is taken.
+ * The lock is polled with {@link FileChannel#tryLock()}: a blocking lock can fail with a false deadlock error when
+ * two threads of one game wait for locks held by another game, as the operating system tracks locks per process.
+ * Readers do not take the lock, the files are written so a reader always sees a complete version.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+final class FileLocks {
+    private static final Map<Path, Object> MONITORS = new ConcurrentHashMap<>();
+    private static final long MAX_POLL_MILLIS = 8;
+
+    /**
+     * This interface is an update run under the lock.
+     */
+    interface Update {
+        void run() throws IOException;
+    }
+
+    private FileLocks() {
+    }
+
+    /**
+     * This method runs an update while holding the lock of a lock file, creating the lock file if it is missing.
+     * It waits until no other thread or process holds the lock.
+     * @param lockFile the lock file
+     * @param update the update to run
+     * @throws IOException if the lock can not be taken or the update fails
+     */
+    static void run(Path lockFile, Update update) throws IOException {
+        Object monitor = MONITORS.computeIfAbsent(lockFile.toAbsolutePath().normalize(), path -> new Object());
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lock(channel);
+                try {
+                    update.run();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the lock of a lock file, waiting a little longer after every failed try.
+     * @param channel the lock file
+     * @return the lock
+     * @throws IOException if the lock can not be taken
+     */
+    private static FileLock lock(FileChannel channel) throws IOException {
+        long waitMillis = 1;
+        while (true) {
+            FileLock lock = channel.tryLock();
+            if (lock != null) return lock;
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileLockInterruptionException();
+            }
+            waitMillis = Math.min(waitMillis * 2, MAX_POLL_MILLIS);
+        }
+    }
+}
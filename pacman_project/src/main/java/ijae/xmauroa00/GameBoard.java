@@ -1,391 +1,217 @@
 package ijae.xmauroa00;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.GridPane;
+import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
 /**
  * This class represents the game board.
- * It contains the game logic such as moving the player and ghosts, checking for collisions, and loading levels.
+ * It loads levels, drives the {@link GameEngine} with the game loop and the key handlers,
+ * and shows the engine state through a {@link BoardRenderer}.
+ * Every level played is recorded as a {@link Replay} and saved in the {@code replays} directory when it ends.
+ * A board can also play a replay instead of a game, the keys then only change the speed.
  * @author Arcangelo Mauro - xmauroa00
  */
-public class GameBoard extends GridPane {
-    private Cell[][] board;
-    private int rows;
-    private int cols;
-    private Cell playerCell;
-    private List<Cell> ghostCells;
-    private int points;
-    private boolean hasKey;
-    private Timeline gameLoop;
-    private Direction currentDirection;
+public class GameBoard extends StackPane {
+    /**
+     * The worker threads computing the ghost intents, set by the {@code pacman.ghostThreads} system property.
+     * They are shared by all games, as only one game is played at a time. Without the property there are none.
+     */
+    private static final GhostWorkers GHOST_WORKERS = createGhostWorkers();
+    private static final Path REPLAYS_DIR = Path.of("replays");
+    private static final double MIN_STEP_MILLIS = 1;
+    private static final double MAX_STEP_MILLIS = 1600;
+    
+    private GameEngine engine;
+    private Level layout;
+    private double stepMillis = 200;
+    private GhostMode ghostMode = GhostMode.RANDOM;
+    private final BoardRenderer renderer;
+    private final GameLoop gameLoop;
     private int currentLevel = 1;
-    private static final int TOT_LEVEL = 2;
+    private final StoryLevels storyLevels;
+    private CompletableFuture<Level> nextLevel;
     private boolean isStoryMode;
     private Stage primaryStage;
-    
-    /**
-     * This enum represents the possible directions the player can move.
-     */
-    private enum Direction {
-        UP, DOWN, LEFT, RIGHT, NONE
-    }
+    private Replay recording;
+    private final Replay.Playback playback;
     
     /**
      * This constructor initializes the game board.
      * It loads the level data and starts the game loop.
-     * @param levelData the level data, so the level layout
+     * @param layout the parsed level layout
      * @param level the level number, so the current level number to start from
      * @param isStoryMode whether the game is in story mode, so the levels not uploaded by a user
      * @param primaryStage the primary stage of the application
      */
-    public GameBoard(String levelData, int level, boolean isStoryMode, Stage primaryStage) {
+    public GameBoard(Level layout, int level, boolean isStoryMode, Stage primaryStage) {
+        this(layout, level, isStoryMode, null, primaryStage);
+    }
+    
+    /**
+     * This constructor initializes a game board which plays a replay at the speed it was recorded at.
+     * The plus and minus keys make it faster or slower.
+     * @param layout the parsed level layout the replay was recorded on
+     * @param replay the replay to play
+     * @param primaryStage the primary stage of the application
+     * @throws IllegalArgumentException if the replay was recorded on another level
+     */
+    public GameBoard(Level layout, Replay replay, Stage primaryStage) {
+        this(layout, 1, false, replay, primaryStage);
+    }
+    
+    private GameBoard(Level layout, int level, boolean isStoryMode, Replay replay, Stage primaryStage) {
         this.primaryStage = primaryStage;
-        ghostCells = new ArrayList<>();
-        currentDirection = Direction.NONE;
-        points = 0;
-        hasKey = false;
         currentLevel = level;
         this.isStoryMode = isStoryMode;
-        loadLevel(levelData);
-        setupGameLoop();
+        storyLevels = isStoryMode ? StoryLevels.scan(Path.of("levels")) : null;
+        playback = replay != null ? replay.play(layout) : null;
+        if (replay != null && replay.getStepMillis() > 0) {
+            stepMillis = replay.getStepMillis();
+        }
+        renderer = BoardRenderer.create();
+        getChildren().add(renderer.getNode());
+        gameLoop = new GameLoop(stepMillis);
+        loadLevel(layout);
+        gameLoop.start();
         setupKeyHandlers();
         
-        setPrefSize(cols * Cell.getCellSize(), rows * Cell.getCellSize());
-        setMinSize(cols * Cell.getCellSize(), rows * Cell.getCellSize());
         setAlignment(Pos.CENTER);
     }
     
     /**
-     * This method sets up the game loop.
-     * It creates a timeline with a key frame that calls the gameStep method every 200 milliseconds.
+     * This method sets the game speed.
+     * It only changes the length of a game step, the running game loop is kept.
+     * @param speedMillis the speed in milliseconds which changes based on user choice in the menu
      */
-    private void setupGameLoop() {
-        gameLoop = new Timeline(new KeyFrame(Duration.millis(200), e -> gameStep()));
-        gameLoop.setCycleCount(Timeline.INDEFINITE);
-        gameLoop.play();
+    public void setGameSpeed(double speedMillis) {
+        stepMillis = speedMillis;
+        gameLoop.setStep(speedMillis);
     }
     
     /**
-     * This method sets the game speed.
-     * It stops the current game loop, creates a new timeline with the given speed, and starts the game loop.
-     * @param speedMillis the speed in milliseconds which changes based on user choice in the menu
+     * This method sets how the ghosts move, on the current level and the next ones.
+     * A replay keeps the ghost mode it was recorded with.
+     * @param ghostMode the ghost mode chosen in the menu
      */
-    public void setGameSpeed(double speedMillis) {
-        gameLoop.stop();
-        gameLoop = new Timeline(new KeyFrame(Duration.millis(speedMillis), e -> gameStep()));
-        gameLoop.setCycleCount(Timeline.INDEFINITE);
-        gameLoop.play();
+    public void setGhostMode(GhostMode ghostMode) {
+        if (playback != null) return;
+        this.ghostMode = ghostMode;
+        engine.setGhostMode(ghostMode);
     }
     
     /**
      * This method sets up the key handlers.
-     * The handlers are used to move the player based on the key pressed on the keyboard.
+     * The handlers are used to move the player based on the key pressed on the keyboard,
+     * every direction is recorded with the tick it was chosen on. While a replay is played,
+     * the plus and minus keys halve or double the length of a game step instead.
      */
     private void setupKeyHandlers() {
         setFocusTraversable(true);
         setOnKeyPressed(e -> {
+            if (playback != null) {
+                switch (e.getCode()) {
+                    case PLUS: case EQUALS: case ADD:
+                        setGameSpeed(Math.max(stepMillis / 2, MIN_STEP_MILLIS)); break;
+                    case MINUS: case SUBTRACT:
+                        setGameSpeed(Math.min(stepMillis * 2, MAX_STEP_MILLIS)); break;
+                    default: break;
+                }
+                return;
+            }
+            Direction direction;
             switch (e.getCode()) {
-                case UP:    currentDirection = Direction.UP; break;
-                case DOWN:  currentDirection = Direction.DOWN; break;
-                case LEFT:  currentDirection = Direction.LEFT; break;
-                case RIGHT: currentDirection = Direction.RIGHT; break;
-                default: currentDirection = Direction.NONE; break;
+                case UP:    direction = Direction.UP; break;
+                case DOWN:  direction = Direction.DOWN; break;
+                case LEFT:  direction = Direction.LEFT; break;
+                case RIGHT: direction = Direction.RIGHT; break;
+                default: direction = Direction.NONE; break;
             }
+            engine.setDirection(direction);
+            recording.record(engine.getTickCount(), direction);
         });
     }
     
     /**
-     * This method is the game loop.
-     * It moves the player and ghosts, checks for collisions, and updates the game state.
-     */
-    private void gameStep() {
-        movePlayer();
-        moveGhosts();
-        checkCollisions();
-    }
-    
-    /**
-     * This method moves the player.
-     * It checks if the player is moving and moves the player in the current direction.
+     * This method is a single step of the game loop.
+     * It advances the game engine by one tick, renders the changed tiles and handles the end of the game.
+     * @return true if the game goes on, false if it was won or lost
      */
-    private void movePlayer() {
-        if (currentDirection == Direction.NONE) return;
-        
-        rotatePlayer(currentDirection);
+    private boolean gameStep() {
+        GameEngine.Status status = playback != null ? playback.step() : engine.tick();
+        renderer.render(engine);
         
-        int[] newPos = getNewPosition(playerCell, currentDirection);
-        if (canMoveTo(newPos[0], newPos[1])) {
-            moveEntity(playerCell, newPos[0], newPos[1]);
+        if (playback != null) {
+            if (!playback.isFinished()) return true;
+            replayFinished();
+            return false;
         }
-    }
-    
-    /**
-     * This method moves the ghosts.
-     * It moves each ghost in a random direction.
-     */
-    private void moveGhosts() {
-        List<Cell> ghostCellsCopy = new ArrayList<>(ghostCells);
-        
-        for (Cell ghostCell : ghostCellsCopy) {
-            Direction randomDir = getRandomDirection();
-            int[] newPos = getNewPosition(ghostCell, randomDir);
-            if (canMoveTo(newPos[0], newPos[1])) {
-                moveEntity(ghostCell, newPos[0], newPos[1]);
-            }
+        if (status == GameEngine.Status.WON) {
+            gameWon();
+        } else if (status == GameEngine.Status.LOST) {
+            gameLost();
         }
+        return status == GameEngine.Status.RUNNING;
     }
     
     /**
-     * This method gets a random direction.
-     * This method will be then used to move the ghosts.
-     * It returns a random direction from the Direction enum.
-     * @return a random direction
-     */
-    private Direction getRandomDirection() {
-        Direction[] directions = Direction.values();
-        return directions[(int)(Math.random() * (directions.length - 1))];
-    }
-    
-    /**
-     * This method gets the new position of the player or ghost.
-     * It calculates the new position based on the current position and the direction.
-     * 
-     * @param cell the current cell of the player or ghost
-     * @param dir the direction of the player or ghost
-     * @return the new position
+     * This method loads a level.
+     * It creates a new game engine for the level and lets the renderer build the view.
+     * In story mode it starts loading the next level in the background, so it is ready when this one is won.
+     * @param layout the parsed level layout
      */
-    private int[] getNewPosition(Cell cell, Direction dir) {
-        int row = GridPane.getRowIndex(cell);
-        int col = GridPane.getColumnIndex(cell);
-        
-        switch (dir) {
-            case UP:    return new int[]{row - 1, col};
-            case DOWN:  return new int[]{row + 1, col};
-            case LEFT:  return new int[]{row, col - 1};
-            case RIGHT: return new int[]{row, col + 1};
-            default:    return new int[]{row, col};
+    private void loadLevel(Level layout) {
+        this.layout = layout;
+        if (playback != null) {
+            engine = playback.getEngine();
+        } else {
+            engine = new GameEngine(layout, createSeed());
+            engine.setGhostMode(ghostMode);
+            recording = new Replay(layout, engine);
         }
-    }
-    
-    /**
-     * Checks if a move to the specified position is valid.
-     * A move is valid if:
-     * <ul>
-     *  <li>The position is within board bounds</li>
-     *  <li>The position is not a wall</li>
-     *  <li>If the position is a gate, the player must have the key</li>
-     * </ul>
-     * 
-     * @param row the row coordinate to check
-     * @param col the column coordinate to check
-     * @return true if the move is valid, false otherwise
-     */
-    private boolean canMoveTo(int row, int col) {
-        if (row < 0 || row >= rows || col < 0 || col >= cols) return false;
-        Cell targetCell = board[row][col];
-        if (targetCell.isWall()) return false;
-        if (targetCell.isGate() && !hasKey) return false;
-        return true;
-    }
-    
-    /**
-     * This method moves an entity.
-     * It handles:
-     * <ul>
-     *  <li>The player collecting items</li>
-     *  <li>The player moving to the new position</li>
-     *  <li>The ghost moving to the new position</li>
-     * </ul>
-     * 
-     * @param entityCell the entity to move
-     * @param newRow the new row coordinate
-     * @param newCol the new column coordinate
-     */
-    private void moveEntity(Cell entityCell, int newRow, int newCol) {
-        Cell targetCell = board[newRow][newCol];
-        
-        if (entityCell == playerCell) {
-            if (targetCell.hasPoint()) {
-                points += 10;
-                targetCell.removePoint();
-            }
-            if (targetCell.hasKey()) {
-                hasKey = true;
-                targetCell.removeKey();
-                targetCell.removeKey();
-            }
-            if (targetCell.isGate() && hasKey) {
-                gameWon();
-                return;
-            }
-            if (targetCell.hasGhost()) {
-                gameLost();
-                return;
-            }
-            
-            int oldRow = GridPane.getRowIndex(entityCell);
-            int oldCol = GridPane.getColumnIndex(entityCell);
-            
-            board[oldRow][oldCol] = targetCell;
-            board[newRow][newCol] = entityCell;
-            
-            GridPane.setRowIndex(entityCell, newRow);
-            GridPane.setColumnIndex(entityCell, newCol);
-            GridPane.setRowIndex(targetCell, oldRow);
-            GridPane.setColumnIndex(targetCell, oldCol);
-            
-        } else if (entityCell.hasGhost()) {
-            if (board[newRow][newCol] == playerCell) {
-                gameLost();
-                return;
-            }
-            
-            int oldRow = GridPane.getRowIndex(entityCell);
-            int oldCol = GridPane.getColumnIndex(entityCell);
-            
-            Cell newSourceCell = new Cell();
-            Cell newTargetCell = new Cell();
-            
-            if (targetCell.hasPoint()) newTargetCell.setPoint();
-            if (targetCell.hasKey()) newTargetCell.setKey();
-            if (targetCell.isGate()) newTargetCell.setGate();
-            if (entityCell.hasPoint()) newSourceCell.setPoint();
-            if (entityCell.hasKey()) newSourceCell.setKey();
-            if (entityCell.isGate()) newSourceCell.setGate();
-            
-            newTargetCell.setGhostWithImage(entityCell.getGhostImage());
-            
-            getChildren().remove(entityCell);
-            getChildren().remove(targetCell);
-            
-            add(newSourceCell, oldCol, oldRow);
-            add(newTargetCell, newCol, newRow);
-            
-            board[oldRow][oldCol] = newSourceCell;
-            board[newRow][newCol] = newTargetCell;
-            ghostCells.remove(entityCell);
-            ghostCells.add(newTargetCell);
+        engine.setWorkers(GHOST_WORKERS);
+        renderer.reset(engine);
+        if (hasNextLevel()) {
+            nextLevel = storyLevels.prefetch(currentLevel + 1);
         }
     }
     
     /**
-     * This method checks for collisions.
-     * It checks if the player collides with a ghost.
-     * If the player collides with a ghost, the game is lost.
+     * Creates the seed of a new game, the {@code pacman.seed} system property if it is set,
+     * so a game can be played again the same way, or a random seed otherwise.
+     * @return the seed
      */
-    private void checkCollisions() {
-        int playerRow = GridPane.getRowIndex(playerCell);
-        int playerCol = GridPane.getColumnIndex(playerCell);
-        
-        for (Cell ghostCell : ghostCells) {
-            int ghostRow = GridPane.getRowIndex(ghostCell);
-            int ghostCol = GridPane.getColumnIndex(ghostCell);
-            
-            if (playerRow == ghostRow && playerCol == ghostCol) {
-                gameLost();
-                break;
-            }
-        }
+    private static long createSeed() {
+        Long seed = Long.getLong("pacman.seed");
+        return seed != null ? seed : ThreadLocalRandom.current().nextLong();
     }
     
     /**
-     * This method loads the level data.
-     * It normalizes the line endings and trims whitespace, then splits the level data into lines.
-     * It checks if the level data has at least 2 lines and if the dimensions are valid.
-     * It then parses the dimensions and creates the board.
-     * @param levelData the level data, so the level layout
+     * Creates the ghost worker threads if the {@code pacman.ghostThreads} system property asks for more than one.
+     * @return the worker threads, or null to move the ghosts on the JavaFX thread only
      */
-    private void loadLevel(String levelData) {
-        String[] lines = levelData.lines().toArray(String[]::new);
-        
-        if (lines.length < 2) {
-            throw new IllegalArgumentException("Invalid level format: file must have at least 2 lines");
-        }
-        
-        String[] dimensions = lines[0].trim().split(" ");
-        if (dimensions.length != 2) {
-            throw new IllegalArgumentException("Invalid dimension format: expected 2 numbers");
-        }
-        
-        try {
-            rows = Integer.parseInt(dimensions[0].trim());
-            cols = Integer.parseInt(dimensions[1].trim());
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid dimensions: must be valid integers");
-        }
-        
-        board = new Cell[rows][cols];
-        
-        for (int i = 0; i < rows; i++) {
-            String row = lines[i + 1].trim();
-            if (row.length() != cols) {
-                throw new IllegalArgumentException(
-                    "Invalid row length at line " + (i + 2) + 
-                    ": expected " + cols + " but got " + row.length()
-                );
-            }
-            for (int j = 0; j < cols; j++) {
-                char cellType = row.charAt(j);
-                board[i][j] = createCell(cellType, i, j);
-            }
-        }
+    private static GhostWorkers createGhostWorkers() {
+        int threads = Integer.getInteger("pacman.ghostThreads", 1);
+        return threads > 1 ? new GhostWorkers(threads) : null;
     }
     
     /**
-     * This method creates a cell.
-     * It creates a cell of the given type and adds it to the board.
-     * The types are:
-     * <ul>
-     *  <li>W - wall</li>
-     *  <li>G - gate</li>
-     *  <li>P - player</li>
-     *  <li>C - ghost</li>
-     *  <li>K - key</li>
-     *  <li>o - empty field with point</li>
-     * </ul>
-     * 
-     * @param type the type of the cell
-     * @param row the row of the cell
-     * @param col the column of the cell
-     * @return the cell
+     * Checks if there is a story level after the current one.
+     * @return true if the game is in story mode and the current level is not the last one
      */
-    private Cell createCell(char type, int row, int col) {
-        Cell cell = new Cell();
-        
-        switch (type) {
-            case 'W': cell.setWall(); break;
-            case 'G': cell.setGate(); break;
-            case 'P': 
-                cell.setPlayer(); 
-                playerCell = cell;
-                break;
-            case 'C': 
-                cell.setGhost();
-                ghostCells.add(cell);
-                break;
-            case 'K': cell.setKey(); break;
-            case 'o': cell.setPoint(); break;
-            default: cell.setEmpty();
-        }
-        
-        add(cell, col, row);
-        return cell;
+    private boolean hasNextLevel() {
+        return isStoryMode && currentLevel < storyLevels.getCount();
     }
     
     /**
@@ -393,41 +219,36 @@ public class GameBoard extends GridPane {
      * It performs the following actions:
      * <ul>
      *  <li>Stops the game loop</li>
-     *  <li>Loads the next level</li>
+     *  <li>Swaps in the next level, which was loaded in the background while this one was played</li>
      *  <li>Restarts the game loop</li>
      * </ul>
+     * If the next level is still loading, the swap happens on the JavaFX thread as soon as it is ready.
      */
     private void gameWon() {
         gameLoop.stop();
+        int points = engine.getPoints();
+        CompletableFuture<Integer> rank = saveLevelScore();
+        saveReplay();
         
-        if (currentLevel < TOT_LEVEL) {
+        if (hasNextLevel()) {
             currentLevel++;
-            Platform.runLater(() -> {
-                try {
-                    String levelData = Files.readString(Path.of("levels/level" + currentLevel + ".txt"));
-                    
-                    getChildren().clear();
-                    ghostCells.clear();
-                    
-                    points = 0;
-                    hasKey = false;
-                    currentDirection = Direction.NONE;
-                    
-                    loadLevel(levelData);
-                    
-                    setupGameLoop();
-                    
-                } catch (Exception e) {
-                    System.out.println("Error loading next level");
+            nextLevel.whenCompleteAsync((layout, error) -> {
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    System.out.println("Error loading next level: " + cause.getMessage());
+                    return;
                 }
-            });
+                loadLevel(layout);
+                gameLoop.start();
+            }, Platform::runLater);
         } else {
             Platform.runLater(() -> {
                 Menu.saveHighScore(points);
                 
                 Dialog<ButtonType> dialog = new Dialog<>();
                 dialog.setTitle("Congratulations!");
-                dialog.setHeaderText("You've completed all levels!\nTotal Points: " + points);
+                showHeader(dialog, "You've completed all levels!\nTotal Points: " + points, rank);
+                showLeaderboard(dialog);
                 
                 ButtonType menuButton = new ButtonType("Return to Menu", ButtonBar.ButtonData.OK_DONE);
                 dialog.getDialogPane().getButtonTypes().add(menuButton);
@@ -459,12 +280,16 @@ public class GameBoard extends GridPane {
      */
     private void gameLost() {
         gameLoop.stop();
+        int points = engine.getPoints();
 
         Menu.saveHighScore(points);
+        CompletableFuture<Integer> rank = saveLevelScore();
+        saveReplay();
 
         Dialog<ButtonType> dialog = new Dialog<>();
         dialog.setTitle("Game Over");
-        dialog.setHeaderText("Game Over!\nPoints: " + points);
+        showHeader(dialog, "Game Over!\nPoints: " + points, rank);
+        showLeaderboard(dialog);
 
         ButtonType menuButton = new ButtonType("Return to Menu", ButtonBar.ButtonData.OK_DONE);
         dialog.getDialogPane().getButtonTypes().add(menuButton);
@@ -489,12 +314,14 @@ public class GameBoard extends GridPane {
                 }
             } else if (result == restartButton) {
                 try {
-                    String levelData = Files.readString(Path.of("levels/level1.txt"));
-                    GameBoard newGame = new GameBoard(levelData, 1, true, primaryStage);
+                    Level layout = LevelCompiler.load(storyLevels.getFile(1));
+                    GameBoard newGame = new GameBoard(layout, 1, true, primaryStage);
+                    newGame.setGameSpeed(stepMillis);
+                    newGame.setGhostMode(ghostMode);
                     Scene gameScene = new Scene(newGame);
                     primaryStage.setScene(gameScene);
                     newGame.requestFocus();
-                } catch (IOException e) {
+                } catch (IOException | LevelFormatException e) {
                     System.out.println("Error restarting from level 1: " + e.getMessage());
                 }
             }
@@ -504,18 +331,146 @@ public class GameBoard extends GridPane {
     }
     
     /**
-     * Rotates the player image based on the movement direction.
-     * @param direction the direction the player is moving
+     * This method saves the score of the level which just ended to its leaderboard in the background.
+     * @return the rank of the score on the leaderboard of the level and the game speed, or 0 if it is not known
+     */
+    private CompletableFuture<Integer> saveLevelScore() {
+        return Menu.saveLevelScore(layout, (int) stepMillis, engine.getPoints(), engine.getTickCount());
+    }
+
+    /**
+     * This method saves the replay of the level which just ended in the background.
+     */
+    private void saveReplay() {
+        recording.finish(engine, (int) stepMillis);
+        recording.save(REPLAYS_DIR).whenComplete((file, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.err.println("Error saving replay: " + cause.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * This method is called when a replay has been played to its end.
+     * It shows the points and whether the replay gave the recorded result, and returns to the menu.
      */
-    private void rotatePlayer(Direction direction) {
-        ImageView playerView = (ImageView) playerCell.getChildren().get(playerCell.getChildren().size() - 1);
+    private void replayFinished() {
+        gameLoop.stop();
+        String result = playback.matches() ? "" : "\nThe replay does not match the recorded game!";
+        Platform.runLater(() -> {
+            Dialog<ButtonType> dialog = new Dialog<>();
+            dialog.setTitle("Replay");
+            dialog.setHeaderText("Replay finished!\nPoints: " + engine.getPoints() + result);
+            
+            ButtonType menuButton = new ButtonType("Return to Menu", ButtonBar.ButtonData.OK_DONE);
+            dialog.getDialogPane().getButtonTypes().add(menuButton);
+            
+            dialog.showAndWait().ifPresent(response -> {
+                Menu menu = new Menu();
+                try {
+                    menu.start(primaryStage);
+                } catch (Exception e) {
+                    System.out.println("Error returning to menu: " + e.getMessage());
+                }
+            });
+        });
+    }
+    
+    /**
+     * Gets the text showing the rank of a score on the level leaderboard.
+     * @param rank the rank, or 0 if it is not known
+     * @return the text to add to a dialog header
+     */
+    private static String getRankText(int rank) {
+        return rank > 0 ? "\nLevel Rank: " + rank : "";
+    }
+
+    /**
+     * This method sets the header of a dialog at once and adds the rank on the JavaFX thread when it is known,
+     * so the dialog does not wait for the leaderboard to be written.
+     * @param dialog the dialog
+     * @param header the header without the rank
+     * @param rank the pending rank of the score
+     */
+    private static void showHeader(Dialog<ButtonType> dialog, String header, CompletableFuture<Integer> rank) {
+        dialog.setHeaderText(header);
+        rank.thenAcceptAsync(r -> dialog.setHeaderText(header + getRankText(r)), Platform::runLater);
+    }
+
+    /**
+     * This method shows the best entries of the leaderboard of the level which just ended in a dialog,
+     * on the JavaFX thread once they are read.
+     * @param dialog the dialog
+     */
+    private void showLeaderboard(Dialog<ButtonType> dialog) {
+        Menu.readLevelTop(layout, (int) stepMillis).thenAcceptAsync(entries -> {
+            if (entries.isEmpty()) return;
+            StringBuilder text = new StringBuilder("Level Leaderboard:");
+            for (int i = 0; i < entries.size(); i++) {
+                Leaderboards.Entry entry = entries.get(i);
+                text.append('\n').append(i + 1).append(". ").append(entry.getScore());
+                if (!entry.getPlayer().isEmpty()) {
+                    text.append("  ").append(entry.getPlayer());
+                }
+            }
+            dialog.setContentText(text.toString());
+        }, Platform::runLater);
+    }
+
+    /**
+     * This class is the game loop.
+     * It runs on every display frame and advances the game in fixed steps, using an accumulator of the elapsed time,
+     * so the game runs at the same speed whatever the frame rate is and catches up after a stall.
+     * Between the steps the sprites are drawn at interpolated positions.
+     */
+    private class GameLoop extends AnimationTimer {
+        /** The longest time a single frame can add to the accumulator, so a long stall does not freeze the game. */
+        private static final long MAX_FRAME_NANOS = 1_000_000_000L;
+        
+        private long stepNanos;
+        private long accumulator;
+        private long lastFrame;
+        
+        /**
+         * Constructs a game loop with the given step length.
+         * @param stepMillis the length of a game step in milliseconds
+         */
+        GameLoop(double stepMillis) {
+            setStep(stepMillis);
+        }
+        
+        /**
+         * Sets the length of a game step, it takes effect on the next frame.
+         * @param stepMillis the length of a game step in milliseconds
+         */
+        void setStep(double stepMillis) {
+            stepNanos = (long) (stepMillis * 1_000_000);
+        }
+        
+        @Override
+        public void start() {
+            accumulator = 0;
+            lastFrame = -1;
+            super.start();
+        }
         
-        switch (direction) {
-            case UP:    playerView.setRotate(90); break;
-            case DOWN:  playerView.setRotate(270);  break;
-            case LEFT:  playerView.setRotate(0); break;
-            case RIGHT: playerView.setRotate(180);   break;
-            default: break;
+        @Override
+        public void handle(long now) {
+            if (lastFrame >= 0) {
+                accumulator += Math.min(now - lastFrame, MAX_FRAME_NANOS);
+            }
+            lastFrame = now;
+            
+            while (accumulator >= stepNanos) {
+                accumulator -= stepNanos;
+                if (!gameStep()) {
+                    stop();
+                    renderer.renderSprites(engine, 1);
+                    return;
+                }
+            }
+            renderer.renderSprites(engine, (double) accumulator / stepNanos);
         }
     }
-}
\ No newline at end of file
+}
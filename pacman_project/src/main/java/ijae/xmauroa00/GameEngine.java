@@ -0,0 +1,415 @@
+package ijae.xmauroa00;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This class contains the game logic without any JavaFX dependency.
+ * It holds the board, the player, the ghosts, the score and the key state,
+ * and advances the game one tick at a time by moving the player, moving the ghosts and checking for collisions.
+ * Positions are stored as the index {@code row * cols + col}.
+ * The tiles and the number of ghosts on every tile are held by a {@link ChunkedWorld}, which only loads the chunks
+ * of the level around the player and the ghosts, so a game on a huge level does not hold the whole level.
+ * The ghost counts are updated as the ghosts move, so checking a tile for a ghost takes the same time
+ * whatever the number of ghosts is.
+ * A tick only works on primitive arrays, it only allocates when a chunk is loaded for the first time,
+ * or the items taken from a chunk are kept when it is evicted.
+ * The chasing ghosts search for the player within {@link #CHASE_RANGE} rows and columns.
+ * <p>
+ * Every random choice is drawn from a generator of its own ghost, split in the order of the ghosts from one
+ * {@link SplittableRandom} created from the seed of the game. A ghost draws the same numbers whatever the other
+ * ghosts do and whichever thread computes its move, so the same seed and the same player directions on the same
+ * ticks always play the same game.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class GameEngine {
+    /**
+     * This enum represents the state of the game after a tick.
+     */
+    public enum Status {
+        RUNNING, WON, LOST
+    }
+
+    private static final Direction[] MOVES = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+    /** The number of ghost looks, see {@link #getGhostVariant(int)}. */
+    public static final int GHOST_VARIANTS = 2;
+    /** The least number of ghosts for which the intents are computed in parallel, fewer do not pay for the hand-off. */
+    private static final int PARALLEL_GHOSTS = 256;
+    /**
+     * The number of rows and columns around the player searched for the chasing ghosts, a ghost farther away
+     * moves randomly. It holds every bundled level, so on those all ghosts chase the player.
+     */
+    public static final int CHASE_RANGE = 64;
+
+    private final int rows;
+    private final int cols;
+    private final int size;
+    private final ChunkedWorld world;
+    private final int[] ghostPositions;
+    private final byte[] ghostIntents;
+    private final SplittableRandom[] ghostRandoms;
+    private final byte[] ghostVariants;
+    private final long seed;
+    private final GhostWorkers.Task intentTask = this::computeIntents;
+    private GhostWorkers workers;
+    private final int[] previousGhostPositions;
+    private final int[] changedTiles;
+    private int changedTileCount;
+    private int playerPosition;
+    private int previousPlayerPosition;
+    private Direction currentDirection;
+    private Direction playerFacing;
+    private int points;
+    private boolean hasKey;
+    private Status status;
+    private long tickCount;
+    private GhostMode ghostMode = GhostMode.RANDOM;
+    private DistanceField distanceField;
+
+    /**
+     * This constructor creates a new game on the given level with a random seed.
+     * The level itself is not changed, so it can be used to start other games.
+     * @param level the level to play
+     */
+    public GameEngine(Level level) {
+        this(level, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * This constructor creates a new game on the given level, the random choices of the ghosts follow from the seed.
+     * The level itself is not changed, so it can be used to start other games.
+     * @param level the level to play
+     * @param seed the seed of the game
+     */
+    public GameEngine(Level level, long seed) {
+        this.seed = seed;
+        rows = level.getRows();
+        cols = level.getCols();
+        size = rows * cols;
+        world = new ChunkedWorld(level);
+        playerPosition = level.getPlayerSpawn();
+        previousPlayerPosition = playerPosition;
+        ghostPositions = new int[level.getGhostCount()];
+        for (int i = 0; i < ghostPositions.length; i++) {
+            ghostPositions[i] = level.getGhostSpawn(i);
+            world.addGhost(ghostPositions[i]);
+        }
+        previousGhostPositions = ghostPositions.clone();
+        ghostIntents = new byte[ghostPositions.length];
+        ghostRandoms = new SplittableRandom[ghostPositions.length];
+        ghostVariants = new byte[ghostPositions.length];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < ghostPositions.length; i++) {
+            ghostRandoms[i] = random.split();
+            ghostVariants[i] = (byte) ghostRandoms[i].nextInt(GHOST_VARIANTS);
+        }
+        changedTiles = new int[4 + 2 * ghostPositions.length];
+        currentDirection = Direction.NONE;
+        playerFacing = Direction.NONE;
+        status = Status.RUNNING;
+    }
+
+    /**
+     * This method advances the game by one tick.
+     * It moves the player and ghosts and checks for collisions.
+     * The tiles which look different after the tick are listed by {@link #getChangedTile(int)}.
+     * Once the game is won or lost, further ticks do nothing.
+     * @return the state of the game after the tick
+     */
+    public Status tick() {
+        changedTileCount = 0;
+        previousPlayerPosition = playerPosition;
+        System.arraycopy(ghostPositions, 0, previousGhostPositions, 0, ghostPositions.length);
+        if (status != Status.RUNNING) return status;
+
+        movePlayer();
+        if (status == Status.RUNNING) moveGhosts();
+        if (status == Status.RUNNING) checkCollisions();
+        tickCount++;
+        return status;
+    }
+
+    /**
+     * This method moves the player.
+     * It checks if the player is moving and moves the player in the current direction,
+     * collecting the point or the key on the new tile.
+     */
+    private void movePlayer() {
+        if (currentDirection == Direction.NONE) return;
+
+        if (playerFacing != currentDirection) {
+            playerFacing = currentDirection;
+            markChanged(playerPosition);
+        }
+
+        int target = getNewPosition(playerPosition, currentDirection);
+        if (!canMoveTo(target)) return;
+
+        byte tile = world.getTile(target);
+        byte items = (byte) (tile & (Level.POINT | Level.KEY));
+        if (items != 0) {
+            markChanged(target);
+            world.takeItems(target, items);
+        }
+        if ((tile & Level.POINT) != 0) {
+            points += 10;
+        }
+        if ((tile & Level.KEY) != 0) {
+            hasKey = true;
+        }
+        if ((tile & Level.GATE) != 0 && hasKey) {
+            status = Status.WON;
+            return;
+        }
+        // the player moves before the ghosts, so this also catches a ghost and the player walking toward each other
+        // on neighbouring tiles: they would swap tiles, the player steps onto the ghost first
+        if (hasGhostAt(target)) {
+            status = Status.LOST;
+            return;
+        }
+        markChanged(playerPosition);
+        markChanged(target);
+        playerPosition = target;
+    }
+
+    /**
+     * This method moves the ghosts.
+     * It moves each ghost in a random direction, or towards the player in the {@link GhostMode#CHASE} mode.
+     * A ghost does not move onto a tile held by another ghost. A ghost moving onto the player ends the game,
+     * a ghost and the player swapping tiles was already caught when the player moved.
+     * <p>
+     * The ghosts move in two phases. The intent phase decides where every ghost would like to go, it only reads
+     * the state of the tick, so it can run in parallel on the {@link GhostWorkers}. The resolve phase then moves
+     * the ghosts one by one in a fixed order, so two ghosts aiming at one tile are settled the same way
+     * however the intents were computed, and the result does not depend on the number of threads.
+     */
+    private void moveGhosts() {
+        if (ghostMode == GhostMode.CHASE) {
+            distanceField.compute(world, playerPosition, hasKey);
+        }
+        if (workers != null && ghostPositions.length >= PARALLEL_GHOSTS) {
+            workers.run(ghostPositions.length, intentTask);
+        } else {
+            computeIntents(0, ghostPositions.length);
+        }
+        for (int i = 0; i < ghostPositions.length; i++) {
+            int target = resolveIntent(i);
+            if (!canMoveTo(target)) continue;
+            if (target == playerPosition) {
+                status = Status.LOST;
+                return;
+            }
+            if (hasGhostAt(target)) continue;
+            markChanged(ghostPositions[i]);
+            markChanged(target);
+            world.removeGhost(ghostPositions[i]);
+            world.addGhost(target);
+            ghostPositions[i] = target;
+        }
+    }
+
+    /**
+     * This method computes the intents of the ghosts, the directions a ghost would like to move in,
+     * as a bit for each direction in the order of {@link #MOVES}.
+     * A chasing ghost wants every direction which takes it one step closer to the player. A random ghost,
+     * or a chasing ghost which can not reach the player, wants one direction drawn from its own generator.
+     * It only reads the tick state and writes the intents and generators of its own ghosts,
+     * so chunks can run in parallel.
+     * @param start the index of the first ghost
+     * @param end the index after the last ghost
+     */
+    private void computeIntents(int start, int end) {
+        for (int i = start; i < end; i++) {
+            int position = ghostPositions[i];
+            int distance = ghostMode == GhostMode.CHASE ? distanceField.getDistance(position)
+                : DistanceField.UNREACHABLE;
+            if (distance == DistanceField.UNREACHABLE) {
+                ghostIntents[i] = (byte) (1 << ghostRandoms[i].nextInt(MOVES.length));
+                continue;
+            }
+            byte intent = 0;
+            for (int move = 0; move < MOVES.length; move++) {
+                int target = getNewPosition(position, MOVES[move]);
+                if (target >= 0 && distanceField.getDistance(target) == distance - 1) {
+                    intent |= 1 << move;
+                }
+            }
+            ghostIntents[i] = intent;
+        }
+    }
+
+    /**
+     * This method gets the tile a ghost moves to from its intent, the first of its directions
+     * which leads to a tile without a ghost. A random direction can lead off the edge of a level without a wall
+     * around it, the ghost then stays where it is.
+     * @param ghost the index of the ghost
+     * @return the tile to move to, or -1 if the ghost stays where it is
+     */
+    private int resolveIntent(int ghost) {
+        int position = ghostPositions[ghost];
+        byte intent = ghostIntents[ghost];
+        for (int move = 0; move < MOVES.length; move++) {
+            if ((intent & (1 << move)) == 0) continue;
+            int target = getNewPosition(position, MOVES[move]);
+            if (target >= 0 && !hasGhostAt(target)) return target;
+        }
+        return -1;
+    }
+
+    /**
+     * This method checks for collisions.
+     * If the player shares a tile with a ghost, the game is lost.
+     */
+    private void checkCollisions() {
+        if (hasGhostAt(playerPosition)) {
+            status = Status.LOST;
+        }
+    }
+
+    /**
+     * This method gets the new position after a step in the given direction.
+     * @param position the current position
+     * @param dir the direction of the step
+     * @return the new position, or -1 if the step leaves the board
+     */
+    private int getNewPosition(int position, Direction dir) {
+        switch (dir) {
+            case UP:    return position >= cols ? position - cols : -1;
+            case DOWN:  return position + cols < size ? position + cols : -1;
+            case LEFT:  return position % cols != 0 ? position - 1 : -1;
+            case RIGHT: return (position + 1) % cols != 0 ? position + 1 : -1;
+            default:    return position;
+        }
+    }
+
+    /**
+     * Checks if a move to the specified position is valid.
+     * A move is valid if:
+     * <ul>
+     *  <li>The position is within board bounds</li>
+     *  <li>The position is not a wall</li>
+     *  <li>If the position is a gate, the player must have the key</li>
+     * </ul>
+     * @param position the position to check
+     * @return true if the move is valid, false otherwise
+     */
+    private boolean canMoveTo(int position) {
+        if (position < 0) return false;
+        byte tile = world.getTile(position);
+        if ((tile & Level.WALL) != 0) return false;
+        if ((tile & Level.GATE) != 0 && !hasKey) return false;
+        return true;
+    }
+
+    /**
+     * Adds a tile to the tiles changed by the current tick.
+     * The list can hold duplicates, it is sized for the most changes a tick can make.
+     * @param position the position of the changed tile
+     */
+    private void markChanged(int position) {
+        changedTiles[changedTileCount++] = position;
+    }
+
+    /**
+     * Gets the number of tiles changed by the last tick.
+     * A tile changes when an item is collected from it, or when the player or a ghost enters, leaves or turns on it.
+     * @return the number of changed tiles
+     */
+    public int getChangedTileCount() { return changedTileCount; }
+
+    /**
+     * Gets a tile changed by the last tick.
+     * The same tile can be listed more than once.
+     * @param index the index in the list of changed tiles, less than {@link #getChangedTileCount()}
+     * @return the position of the changed tile
+     */
+    public int getChangedTile(int index) { return changedTiles[index]; }
+
+    /**
+     * Checks if a ghost is on the given position.
+     * @param position the position to check
+     * @return true if a ghost is on the position
+     */
+    public boolean hasGhostAt(int position) {
+        return world.hasGhostAt(position);
+    }
+
+    /**
+     * Sets how the ghosts choose where to move, from the next tick.
+     * The distance field used by the {@link GhostMode#CHASE} mode is allocated here, so the ticks do not allocate.
+     * It only covers {@link #CHASE_RANGE} rows and columns around the player, so its size does not depend on the level.
+     * @param ghostMode the ghost mode
+     */
+    public void setGhostMode(GhostMode ghostMode) {
+        if (ghostMode == GhostMode.CHASE && distanceField == null) {
+            distanceField = new DistanceField(rows, cols, CHASE_RANGE);
+        }
+        this.ghostMode = ghostMode;
+    }
+
+    public GhostMode getGhostMode() { return ghostMode; }
+
+    /**
+     * Sets the worker threads which compute the ghost intents in parallel, for levels with many ghosts.
+     * The game plays the same with or without them. The engine does not close the workers.
+     * @param workers the worker threads, or null to compute the intents on the ticking thread
+     */
+    public void setWorkers(GhostWorkers workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the direction the player will move in on the next ticks.
+     * @param direction the new direction
+     */
+    public void setDirection(Direction direction) {
+        currentDirection = direction;
+    }
+
+    /**
+     * Gets the flags of a tile, a combination of {@link Level#WALL}, {@link Level#GATE},
+     * {@link Level#POINT} and {@link Level#KEY}.
+     * @param position the position of the tile
+     * @return the flags of the tile
+     */
+    public byte getTile(int position) { return world.getTile(position); }
+
+    public int getRows() { return rows; }
+    public int getCols() { return cols; }
+    public ChunkedWorld getWorld() { return world; }
+    public int getPlayerPosition() { return playerPosition; }
+    public int getGhostCount() { return ghostPositions.length; }
+    public int getGhostPosition(int ghost) { return ghostPositions[ghost]; }
+
+    /**
+     * Gets the look of a ghost, drawn from its generator when the game is created so it follows from the seed.
+     * @param ghost the index of the ghost
+     * @return the look of the ghost, from 0 to {@link #GHOST_VARIANTS} - 1
+     */
+    public int getGhostVariant(int ghost) { return ghostVariants[ghost]; }
+
+    /**
+     * Gets the seed of the game, a new game created with it and given the same directions plays the same.
+     * @return the seed
+     */
+    public long getSeed() { return seed; }
+
+    /**
+     * Gets the position of the player before the last tick, so a renderer can interpolate the movement.
+     * @return the position of the player before the last tick
+     */
+    public int getPreviousPlayerPosition() { return previousPlayerPosition; }
+
+    /**
+     * Gets the position of a ghost before the last tick, so a renderer can interpolate the movement.
+     * @param ghost the index of the ghost
+     * @return the position of the ghost before the last tick
+     */
+    public int getPreviousGhostPosition(int ghost) { return previousGhostPositions[ghost]; }
+    public Direction getDirection() { return currentDirection; }
+    public Direction getPlayerFacing() { return playerFacing; }
+    public int getPoints() { return points; }
+    public boolean hasKey() { return hasKey; }
+    public Status getStatus() { return status; }
+    public long getTickCount() { return tickCount; }
+}
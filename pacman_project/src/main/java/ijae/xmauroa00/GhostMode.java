@@ -0,0 +1,12 @@
+package ijae.xmauroa00;
+
+/**
+ * This enum represents how the ghosts choose where to move.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public enum GhostMode {
+    /** Every ghost moves in a random direction. */
+    RANDOM,
+    /** Every ghost moves along a shortest path towards the player, see {@link DistanceField}. */
+    CHASE
+}
@@ -0,0 +1,151 @@
+package ijae.xmauroa00;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is a fixed pool of worker threads which run a task over a range of ghosts in parallel.
+ * The range is split into one chunk per thread, the calling thread runs the first chunk itself and
+ * waits for the others. The threads are started once and parked between runs, and a run only changes
+ * fields of the pool, so the game tick stays free of heap allocation when it uses the pool.
+ * A pool runs one task at a time, it is meant to be used by the thread which ticks the game.
+ * Closing the pool waits for a running task, so every chunk of a started task is run.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class GhostWorkers implements AutoCloseable {
+    /**
+     * This interface is a task run over a chunk of the ghosts.
+     */
+    public interface Task {
+        /**
+         * Runs the task for the ghosts from start, inclusive, to end, exclusive.
+         * @param start the index of the first ghost
+         * @param end the index after the last ghost
+         */
+        void run(int start, int end);
+    }
+
+    private final Thread[] workers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile int generation;
+    private volatile boolean closed;
+    private Task task;
+    private int count;
+    private Thread caller;
+    private volatile Throwable failure;
+
+    /**
+     * Constructs a pool and starts its worker threads.
+     * @param threads the number of threads running a task, including the calling thread, at least 1
+     */
+    public GhostWorkers(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("A pool needs at least one thread");
+        }
+        workers = new Thread[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            int chunk = i + 1;
+            workers[i] = new Thread(() -> work(chunk), "ghost-worker-" + chunk);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Gets the number of threads running a task, including the calling thread.
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return workers.length + 1;
+    }
+
+    /**
+     * This method runs a task over the ghosts and returns when every chunk is done,
+     * also when the chunk of the calling thread fails.
+     * Writes made by the task are visible to the caller afterwards.
+     * @param count the number of ghosts
+     * @param task the task
+     * @throws IllegalStateException if the task failed on a worker thread
+     */
+    public synchronized void run(int count, Task task) {
+        if (closed) {
+            throw new IllegalStateException("The pool is closed");
+        }
+        this.task = task;
+        this.count = count;
+        caller = Thread.currentThread();
+        failure = null;
+        pending.set(workers.length);
+        generation++;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+
+        try {
+            runChunk(0, task, count);
+        } finally {
+            while (pending.get() != 0) {
+                LockSupport.park(this);
+            }
+            this.task = null;
+        }
+
+        Throwable error = failure;
+        if (error != null) {
+            failure = null;
+            throw new IllegalStateException("A ghost worker failed", error);
+        }
+    }
+
+    /**
+     * This method stops the worker threads, after the running task if there is one.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * This method is the loop of a worker thread, it runs its chunk of every task until the pool is closed.
+     * A task it was signalled for is run even if the pool was closed since, so the caller is never left waiting.
+     * @param chunk the index of the chunk of the worker
+     */
+    private void work(int chunk) {
+        int seen = 0;
+        while (true) {
+            int current = generation;
+            if (current == seen) {
+                if (closed) return;
+                LockSupport.park(this);
+                continue;
+            }
+            seen = current;
+            try {
+                runChunk(chunk, task, count);
+            } catch (Throwable e) {
+                failure = e;
+            }
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    /**
+     * Runs one chunk of a task.
+     * @param chunk the index of the chunk
+     * @param task the task
+     * @param count the number of ghosts
+     */
+    private void runChunk(int chunk, Task task, int count) {
+        int threads = workers.length + 1;
+        int start = (int) ((long) count * chunk / threads);
+        int end = (int) ((long) count * (chunk + 1) / threads);
+        if (start < end) {
+            task.run(start, end);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the high scores in memory and stores them in the high scores file.
+ * The file holds one score per line. New scores are appended to it on a background writer thread and
+ * forced to the disk, so saving a score never blocks the caller and a saved score survives the process being killed.
+ * After {@link #COMPACT_AFTER} appended scores the file is compacted, the top {@link #MAX_HIGH_SCORES} scores
+ * ordered from the highest are written to a temporary file which replaces the high scores file in one rename.
+ * Reading the file back gives the same high scores whether it was compacted or not, so a crash at any point
+ * loses no saved score and never counts a score twice.
+ * <p>
+ * Several game instances can share the file. Appending and compacting hold the lock of the {@code .lock} file
+ * next to it, see {@link FileLocks}, and compacting merges the scores of every instance found in the file,
+ * so no instance overwrites the scores of another. Reading takes no lock, a line is only counted once it is complete.
+ * It does not depend on JavaFX, so it can be used and measured without starting the game.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class HighScores {
+    /** The number of high scores which are kept. */
+    public static final int MAX_HIGH_SCORES = 5;
+    /** The number of scores appended to the file before it is compacted. */
+    public static final int COMPACT_AFTER = 32;
+
+    private final Path file;
+    private final Path lockFile;
+    private final int[] scores = new int[MAX_HIGH_SCORES];
+    private int scoreCount;
+    /** The scores submitted but not yet appended, in the order they are appended. */
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+    private final ExecutorService writer;
+    private int appendedLines;
+
+    /**
+     * This class holds the high scores read from the file.
+     */
+    private static final class Snapshot {
+        final int[] scores = new int[MAX_HIGH_SCORES];
+        int count;
+        /** Whether the file holds anything more than the high scores in order, so compacting it would change it. */
+        boolean compactable;
+    }
+
+    private HighScores(Path file) {
+        this.file = file;
+        lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "high-score-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This method opens the high scores file, the high scores are read on the writer thread.
+     * It returns at once, so it can be called from the JavaFX thread. Until the file is read the high scores only
+     * hold the submitted scores, scores submitted before it is read are appended after it.
+     * A missing file has no high scores, lines which are not a score are skipped.
+     * If the file is not compacted, for example because the game was closed before it was, it is compacted
+     * on the writer thread.
+     * The writer is stopped and its pending scores written when the Java virtual machine exits.
+     * @param file the high scores file
+     * @return the high scores
+     */
+    public static HighScores open(Path file) {
+        HighScores highScores = new HighScores(file);
+        highScores.writer.execute(highScores::load);
+        Runtime.getRuntime().addShutdownHook(new Thread(highScores::close, "high-score-shutdown"));
+        return highScores;
+    }
+
+    /**
+     * This method reads the high scores when the file is opened and compacts the file if needed,
+     * it runs on the writer thread.
+     */
+    private void load() {
+        Snapshot snapshot = read(file);
+        update(snapshot);
+        if (snapshot.compactable) {
+            compactQuietly();
+        }
+    }
+
+    /**
+     * This method saves a score.
+     * The high scores are updated at once, the score is written to the file on the writer thread.
+     * A failure is reported on the error output, as the caller usually does not wait for the write.
+     * @param score the score to save
+     * @return the pending write, done when the score is on the disk, or failed with the error
+     */
+    public Future<?> submit(int score) {
+        synchronized (this) {
+            scoreCount = insert(scores, scoreCount, score);
+            pending.add(score);
+        }
+        return writer.submit(() -> {
+            try {
+                append(score);
+            } catch (IOException e) {
+                System.err.println("Error saving high score: " + e.getMessage());
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                System.err.println("Error saving high score: " + e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * This method gets the high scores.
+     * They hold the scores of this instance and the scores of other instances found the last time the file was read.
+     * @return the high scores, ordered from the highest score
+     */
+    public synchronized List<Integer> getScores() {
+        List<Integer> list = new ArrayList<>(scoreCount);
+        for (int i = 0; i < scoreCount; i++) {
+            list.add(scores[i]);
+        }
+        return list;
+    }
+
+    /**
+     * This method reads the file again on the writer thread, so the high scores include the scores
+     * saved by other instances since it was last read.
+     * @return the pending read, completed on the writer thread when the high scores are updated
+     */
+    public CompletableFuture<Void> refresh() {
+        return CompletableFuture.runAsync(() -> update(read(file)), writer);
+    }
+
+    /**
+     * This method waits until every submitted score is on the disk.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * This method writes the pending scores, compacts the file and stops the writer thread.
+     * Scores submitted after it are kept in memory only.
+     */
+    public void close() {
+        if (writer.isShutdown()) return;
+        try {
+            writer.execute(this::compactQuietly);
+        } catch (RejectedExecutionException e) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method reads the high scores from a file without taking the lock.
+     * A last line without a line end is being written or was cut off, a score is only saved with its line end,
+     * so the line is not counted.
+     * @param file the high scores file
+     * @return the high scores in the file, none if it can not be read
+     */
+    private static Snapshot read(Path file) {
+        Snapshot snapshot = new Snapshot();
+        String content;
+        try {
+            content = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return snapshot; // no high scores yet
+        }
+        int lineCount = 0;
+        int previous = Integer.MAX_VALUE;
+        for (int start = 0, end; (end = content.indexOf('\n', start)) >= 0; start = end + 1) {
+            lineCount++;
+            try {
+                int score = Integer.parseInt(content.substring(start, end).trim());
+                snapshot.count = insert(snapshot.scores, snapshot.count, score);
+                snapshot.compactable |= score > previous;
+                previous = score;
+            } catch (NumberFormatException e) {
+                snapshot.compactable = true;
+            }
+        }
+        snapshot.compactable |= lineCount > snapshot.count || (!content.isEmpty() && !content.endsWith("\n"));
+        return snapshot;
+    }
+
+    /**
+     * This method sets the high scores to the scores read from the file and the scores not yet appended to it.
+     * It runs on the writer thread, so no score is appended while it runs.
+     * @param snapshot the high scores read from the file
+     */
+    private synchronized void update(Snapshot snapshot) {
+        scoreCount = 0;
+        for (int i = 0; i < snapshot.count; i++) {
+            scoreCount = insert(scores, scoreCount, snapshot.scores[i]);
+        }
+        for (int score : pending) {
+            scoreCount = insert(scores, scoreCount, score);
+        }
+    }
+
+    /**
+     * Inserts a score into high scores ordered from the highest score,
+     * dropping the lowest one if there are already {@link #MAX_HIGH_SCORES}.
+     * @param scores the high scores
+     * @param count the number of high scores
+     * @param score the score to insert
+     * @return the new number of high scores
+     */
+    private static int insert(int[] scores, int count, int score) {
+        int i = count;
+        if (i == MAX_HIGH_SCORES) {
+            if (score <= scores[i - 1]) return count;
+            i--;
+        } else {
+            count++;
+        }
+        while (i > 0 && scores[i - 1] < score) {
+            scores[i] = scores[i - 1];
+            i--;
+        }
+        scores[i] = score;
+        return count;
+    }
+
+    /**
+     * This method appends a score to the file under the lock, it runs on the writer thread.
+     * A line cut off by a crash of another instance is removed first, so the score is not joined to it.
+     * The score is forced to the disk before it returns, and the file is compacted when enough scores were appended.
+     * The score leaves the pending scores whether it was written or not, so they stay in the order of the writes.
+     * @param score the score to append
+     * @throws IOException if the file can not be written
+     */
+    private void append(int score) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((score + "\n").getBytes(StandardCharsets.US_ASCII));
+        try {
+            FileLocks.run(lockFile, () -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    channel.truncate(findLastLineEnd(channel));
+                    channel.position(channel.size());
+                    while (line.hasRemaining()) {
+                        channel.write(line);
+                    }
+                    channel.force(false);
+                }
+            });
+        } finally {
+            synchronized (this) {
+                pending.poll();
+            }
+        }
+        if (++appendedLines >= COMPACT_AFTER) {
+            compact();
+        } else {
+            update(read(file));
+        }
+    }
+
+    /**
+     * Finds the end of the last complete line of the file.
+     * @param channel the file
+     * @return the size of the file without its last line if that line has no line end
+     * @throws IOException if the file can not be read
+     */
+    private static long findLastLineEnd(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        long end = channel.size();
+        while (end > 0) {
+            buffer.clear();
+            channel.read(buffer, end - 1);
+            if (buffer.get(0) == '\n') break;
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * This method compacts the file under the lock, it runs on the writer thread.
+     * The high scores in the file, saved by any instance, are written to a temporary file, forced to the disk
+     * and renamed over the file. Scores still waiting to be appended are left out, so they are not written twice.
+     * @throws IOException if the file can not be written
+     */
+    private void compact() throws IOException {
+        FileLocks.run(lockFile, this::compactLocked);
+    }
+
+    /**
+     * This method compacts the file while holding the lock.
+     * @throws IOException if the file can not be written
+     */
+    private void compactLocked() throws IOException {
+        Snapshot snapshot = read(file);
+        update(snapshot);
+        appendedLines = 0;
+        if (!snapshot.compactable) return;
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < snapshot.count; i++) {
+            content.append(snapshot.scores[i]).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.US_ASCII));
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * This method compacts the file and reports a failure instead of throwing it.
+     */
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (NoSuchFileException e) {
+            // nothing saved yet
+        } catch (IOException e) {
+            System.err.println("Error compacting high scores: " + e.getMessage());
+        }
+    }
+}
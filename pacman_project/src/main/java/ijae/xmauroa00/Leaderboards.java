@@ -0,0 +1,436 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class stores a leaderboard for every level and game speed.
+ * A leaderboard is keyed by the checksum of the level, so it follows the layout and not the file name,
+ * and is stored in its own file named {@code <checksum>-<speed>.lb} in the leaderboards directory.
+ * <p>
+ * A leaderboard file holds, in big-endian order, the magic number {@code PMLB}, the format version, the number
+ * of entries added since the file was ordered and the number of entries, then the ordered entries from the highest
+ * score, then the added entries in the order they were added. Every entry has the same size, so the entry at a rank
+ * is read at a known offset: the top entries are read from the start of the file and the rank of a score is found
+ * with a binary search over the ordered entries and a scan of the few added ones, both without reading the whole file.
+ * Version 1 files have no added entries and are read the same way.
+ * <p>
+ * Entries are added on a background writer thread. A new entry is written after the last one and only then counted
+ * in the header, so adding it costs the same for any number of entries and a reader needs no lock.
+ * After {@link #MAX_UNSORTED} added entries the file is written again in order under a temporary name and renamed,
+ * so a reader never sees a partial file.
+ * Writers of every game instance hold the lock of the {@code .lock} file in the leaderboards directory,
+ * see {@link FileLocks}, and add their entry to the file as it is at that moment, so no entry is lost.
+ * The rank of a new entry is found while it is added, so it counts every entry written before it,
+ * including the entries which were still waiting on the writer thread when it was submitted.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class Leaderboards {
+    /** The extension of leaderboard files. */
+    public static final String EXTENSION = ".lb";
+    /** The most bytes of the player name which are stored. */
+    public static final int NAME_BYTES = 24;
+
+    private static final int MAGIC = 0x504D4C42;
+    private static final short VERSION = 2;
+    /** The most entries added after the ordered entries before the file is written again in order. */
+    private static final int MAX_UNSORTED = 64;
+    /** Orders entries from the highest score, the sort is stable so an entry stays after earlier ones with its score. */
+    private static final Comparator<Entry> BY_SCORE = (a, b) -> Integer.compare(b.getScore(), a.getScore());
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4;
+    private static final int ENTRY_SIZE = 4 + 4 + 8 + NAME_BYTES;
+
+    /**
+     * This class is an entry of a leaderboard.
+     */
+    public static final class Entry {
+        private final int score;
+        private final int ticks;
+        private final long time;
+        private final String player;
+
+        /**
+         * Constructs an entry.
+         * @param score the score
+         * @param ticks the number of game ticks the level was played for
+         * @param time the time the level ended, in milliseconds since the epoch
+         * @param player the name of the player, cut to {@link #NAME_BYTES} bytes when stored
+         */
+        public Entry(int score, int ticks, long time, String player) {
+            this.score = score;
+            this.ticks = ticks;
+            this.time = time;
+            this.player = player;
+        }
+
+        public int getScore() { return score; }
+        public int getTicks() { return ticks; }
+        public long getTime() { return time; }
+        public String getPlayer() { return player; }
+    }
+
+    private final Path dir;
+    private final ExecutorService writer;
+
+    private Leaderboards(Path dir) {
+        this.dir = dir;
+        writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "leaderboard-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This method opens the leaderboards in a directory, the directory is created when the first entry is added.
+     * The writer is stopped and its pending entries written when the Java virtual machine exits.
+     * @param dir the leaderboards directory
+     * @return the leaderboards
+     */
+    public static Leaderboards open(Path dir) {
+        Leaderboards leaderboards = new Leaderboards(dir);
+        Runtime.getRuntime().addShutdownHook(new Thread(leaderboards::close, "leaderboard-shutdown"));
+        return leaderboards;
+    }
+
+    /**
+     * This method writes the pending entries and stops the writer thread.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the file of a leaderboard.
+     * @param checksum the checksum of the level, see {@link Level#getChecksum()}
+     * @param speedMillis the length of a game step in milliseconds
+     * @return the leaderboard file
+     */
+    public Path getFile(int checksum, int speedMillis) {
+        return dir.resolve(String.format("%08x-%d%s", checksum, speedMillis, EXTENSION));
+    }
+
+    /**
+     * This method gets the best entries of a leaderboard.
+     * Only the returned entries of the ordered part and the entries added since it was ordered are read from the file.
+     * @param checksum the checksum of the level
+     * @param speedMillis the length of a game step in milliseconds
+     * @param n the most entries to return
+     * @return the best entries, ordered from the highest score, an entry ranks before a later one with the same score
+     * @throws IOException if the leaderboard file can not be read or is not valid
+     */
+    public List<Entry> top(int checksum, int speedMillis, int n) throws IOException {
+        Path file = getFile(checksum, speedMillis);
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(file)) return entries;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            int sorted = header.count - header.unsorted;
+            int count = Math.min(sorted, n);
+            ByteBuffer buffer = ByteBuffer.allocate(count * ENTRY_SIZE);
+            readFully(channel, buffer, HEADER_SIZE);
+            buffer.flip();
+            for (int i = 0; i < count; i++) {
+                entries.add(readEntry(buffer));
+            }
+            List<Entry> added = readAdded(channel, header);
+            added.sort(BY_SCORE);
+            int i = 0;
+            for (Entry entry : added) {
+                while (i < entries.size() && entries.get(i).getScore() >= entry.getScore()) i++;
+                entries.add(i++, entry);
+            }
+        }
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, n)) : entries;
+    }
+
+    /**
+     * This method reads the best entries of a leaderboard on the writer thread,
+     * so they include every entry submitted before.
+     * @param checksum the checksum of the level
+     * @param speedMillis the length of a game step in milliseconds
+     * @param n the most entries to return
+     * @return the pending read, completed on the writer thread with the best entries, none if they can not be read
+     */
+    public CompletableFuture<List<Entry>> readTop(int checksum, int speedMillis, int n) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return top(checksum, speedMillis, n);
+            } catch (IOException e) {
+                System.err.println("Error reading leaderboard: " + e.getMessage());
+                return new ArrayList<>();
+            }
+        }, writer);
+    }
+
+    /**
+     * This method adds an entry to a leaderboard on the writer thread.
+     * @param checksum the checksum of the level
+     * @param speedMillis the length of a game step in milliseconds
+     * @param entry the entry to add
+     * @return the pending write, completed on the writer thread with the rank of the entry once it is in the file,
+     *         or with 0 if it could not be written
+     */
+    public CompletableFuture<Integer> submit(int checksum, int speedMillis, Entry entry) {
+        Path file = getFile(checksum, speedMillis);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return insert(file, entry);
+            } catch (IOException e) {
+                System.err.println("Error saving leaderboard entry: " + e.getMessage());
+                return 0;
+            }
+        }, writer);
+    }
+
+    /**
+     * This method adds an entry to a leaderboard file under the lock.
+     * @param file the leaderboard file
+     * @param entry the entry to add
+     * @return the rank of the entry, 1 for the best score
+     * @throws IOException if the file can not be read or written
+     */
+    private int insert(Path file, Entry entry) throws IOException {
+        Files.createDirectories(dir);
+        int[] rank = new int[1];
+        FileLocks.run(dir.resolve(".lock"), () -> rank[0] = insertLocked(file, entry));
+        return rank[0];
+    }
+
+    /**
+     * This method adds an entry to a leaderboard file, while holding the lock.
+     * The entry is written after the last entry and then counted in the header, so a reader sees the file
+     * with or without it. Bytes after the counted entries, left by a crash between the two writes, are overwritten.
+     * A new file, or a file with {@link #MAX_UNSORTED} added entries, is written again in order instead.
+     * @param file the leaderboard file
+     * @param entry the entry to add
+     * @return the rank of the entry, 1 for the best score
+     * @throws IOException if the file can not be read or written
+     */
+    private int insertLocked(Path file, Entry entry) throws IOException {
+        int sorted = 0;
+        List<Entry> added = new ArrayList<>();
+        int rank = 1;
+        if (Files.exists(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                Header header = readHeader(channel);
+                sorted = header.count - header.unsorted;
+                added = readAdded(channel, header);
+                rank = findIndex(channel, sorted, entry.getScore()) + 1;
+                for (Entry other : added) {
+                    if (other.getScore() >= entry.getScore()) rank++;
+                }
+                if (header.unsorted < MAX_UNSORTED) {
+                    channel.position(HEADER_SIZE + (long) header.count * ENTRY_SIZE);
+                    writeFully(channel, encode(entry));
+                    channel.force(false);
+                    channel.position(0);
+                    writeFully(channel, header(header.count + 1, header.unsorted + 1));
+                    channel.force(false);
+                    return rank;
+                }
+            }
+        }
+        added.add(entry);
+        rewrite(file, sorted, added);
+        return rank;
+    }
+
+    /**
+     * This method writes a leaderboard file again in order, with the added entries merged into the ordered ones.
+     * The ordered entries between them are copied between the files without being decoded.
+     * The file is written under a temporary name, forced to the disk and then renamed,
+     * so a reader never sees a partial file.
+     * @param file the leaderboard file
+     * @param sorted the number of ordered entries in the file
+     * @param added the entries added since the file was ordered, in the order they were added
+     * @throws IOException if the file can not be read or written
+     */
+    private void rewrite(Path file, int sorted, List<Entry> added) throws IOException {
+        List<Entry> merged = new ArrayList<>(added);
+        merged.sort(BY_SCORE);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 FileChannel in = sorted > 0 ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+                writeFully(out, header(sorted + merged.size(), 0));
+                int copied = 0;
+                for (Entry entry : merged) {
+                    int index = findIndex(in, sorted, entry.getScore());
+                    transferFully(in, HEADER_SIZE + (long) copied * ENTRY_SIZE, (long) (index - copied) * ENTRY_SIZE,
+                        out);
+                    writeFully(out, encode(entry));
+                    copied = index;
+                }
+                transferFully(in, HEADER_SIZE + (long) copied * ENTRY_SIZE, (long) (sorted - copied) * ENTRY_SIZE,
+                    out);
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the entries added since the file was ordered.
+     * @param channel the leaderboard file
+     * @param header the header of the file
+     * @return the entries, in the order they were added
+     * @throws IOException if the file can not be read
+     */
+    private static List<Entry> readAdded(FileChannel channel, Header header) throws IOException {
+        List<Entry> added = new ArrayList<>(header.unsorted + 1);
+        ByteBuffer buffer = ByteBuffer.allocate(header.unsorted * ENTRY_SIZE);
+        readFully(channel, buffer, HEADER_SIZE + (long) (header.count - header.unsorted) * ENTRY_SIZE);
+        buffer.flip();
+        for (int i = 0; i < header.unsorted; i++) {
+            added.add(readEntry(buffer));
+        }
+        return added;
+    }
+
+    /**
+     * Finds the index of the first ordered entry with a lower score than the given one.
+     * @param channel the leaderboard file
+     * @param count the number of ordered entries
+     * @param score the score
+     * @return the index of the first entry with a lower score, or count if there is none
+     * @throws IOException if the file can not be read
+     */
+    private static int findIndex(FileChannel channel, int count, int score) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            buffer.clear();
+            readFully(channel, buffer, HEADER_SIZE + (long) middle * ENTRY_SIZE);
+            if (buffer.getInt(0) >= score) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This class holds the header of a leaderboard file.
+     */
+    private static final class Header {
+        final int count;
+        final int unsorted;
+
+        Header(int count, int unsorted) {
+            this.count = count;
+            this.unsorted = unsorted;
+        }
+    }
+
+    /**
+     * Reads the header of a leaderboard file and checks it against the size of the file.
+     * The file can be longer than its entries, if a crash stopped an entry from being counted.
+     * @param channel the leaderboard file
+     * @return the header
+     * @throws IOException if the file can not be read or is not a valid leaderboard file
+     */
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Not a leaderboard file");
+        }
+        readFully(channel, header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a leaderboard file");
+        }
+        short version = header.getShort(4);
+        if (version != VERSION && version != 1) {
+            throw new IOException("Unsupported leaderboard version " + version);
+        }
+        int unsorted = version == 1 ? 0 : header.getShort(6);
+        int count = header.getInt(8);
+        if (count < 0 || unsorted < 0 || unsorted > Math.min(count, MAX_UNSORTED)
+                || channel.size() < HEADER_SIZE + (long) count * ENTRY_SIZE) {
+            throw new IOException("Leaderboard file has an invalid size");
+        }
+        return new Header(count, unsorted);
+    }
+
+    private static ByteBuffer header(int count, int unsorted) {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).putShort((short) unsorted)
+            .putInt(count).flip();
+    }
+
+    /**
+     * Encodes an entry, the player name is cut to {@link #NAME_BYTES} bytes without splitting a character
+     * and padded with zeros.
+     * @param entry the entry
+     * @return the encoded entry
+     */
+    private static ByteBuffer encode(Entry entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(ENTRY_SIZE);
+        buffer.putInt(entry.getScore()).putInt(entry.getTicks()).putLong(entry.getTime());
+        String player = entry.getPlayer();
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        while (name.length > NAME_BYTES) {
+            player = player.substring(0, player.offsetByCodePoints(player.length(), -1));
+            name = player.getBytes(StandardCharsets.UTF_8);
+        }
+        buffer.put(name);
+        return buffer.clear();
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        int score = buffer.getInt();
+        int ticks = buffer.getInt();
+        long time = buffer.getLong();
+        byte[] name = new byte[NAME_BYTES];
+        buffer.get(name);
+        int length = 0;
+        while (length < NAME_BYTES && name[length] != 0) {
+            length++;
+        }
+        return new Entry(score, ticks, time, new String(name, 0, length, StandardCharsets.UTF_8));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Leaderboard file ends early");
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void transferFully(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long transferred = in.transferTo(position, count, out);
+            position += transferred;
+            count -= transferred;
+        }
+    }
+}
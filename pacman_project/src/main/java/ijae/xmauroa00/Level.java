@@ -0,0 +1,128 @@
+package ijae.xmauroa00;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents a parsed level layout.
+ * It does not depend on JavaFX, so it can be used by the game engine without starting a toolkit.
+ * The tiles are stored row by row in a single buffer, a position on the board is the index
+ * {@code row * cols + col} into that buffer. The buffer is either on the heap or mapped from a compiled level file.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class Level {
+    /** The tile is a wall. */
+    public static final byte WALL = 1;
+    /** The tile is the gate which can be opened with the key. */
+    public static final byte GATE = 2;
+    /** The tile holds a point. */
+    public static final byte POINT = 4;
+    /** The tile holds the key. */
+    public static final byte KEY = 8;
+
+    private final int rows;
+    private final int cols;
+    private final ByteBuffer tiles;
+    private final int playerSpawn;
+    private final int[] ghostSpawns;
+    private int checksum;
+    private boolean hasChecksum;
+
+    /**
+     * Constructs a level, levels are created by the {@link LevelParser} and the {@link LevelCompiler}.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param tiles the tile flags row by row, the level does not change them
+     * @param playerSpawn the starting position of the player
+     * @param ghostSpawns the starting positions of the ghosts
+     */
+    Level(int rows, int cols, ByteBuffer tiles, int playerSpawn, int[] ghostSpawns) {
+        this.rows = rows;
+        this.cols = cols;
+        this.tiles = tiles.asReadOnlyBuffer();
+        this.playerSpawn = playerSpawn;
+        this.ghostSpawns = ghostSpawns;
+    }
+
+    /**
+     * Constructs a level with a known checksum, so it is not computed from the tiles.
+     * It is used by the {@link LevelCompiler}, which stores the checksum in the compiled level file.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param tiles the tile flags row by row, the level does not change them
+     * @param playerSpawn the starting position of the player
+     * @param ghostSpawns the starting positions of the ghosts
+     * @param checksum the checksum of the level
+     */
+    Level(int rows, int cols, ByteBuffer tiles, int playerSpawn, int[] ghostSpawns, int checksum) {
+        this(rows, cols, tiles, playerSpawn, ghostSpawns);
+        this.checksum = checksum;
+        hasChecksum = true;
+    }
+
+    public int getRows() { return rows; }
+    public int getCols() { return cols; }
+    public int getPlayerSpawn() { return playerSpawn; }
+    public int getGhostCount() { return ghostSpawns.length; }
+
+    /**
+     * Gets the starting position of a ghost.
+     * @param ghost the index of the ghost
+     * @return the position of the ghost as {@code row * cols + col}
+     */
+    public int getGhostSpawn(int ghost) { return ghostSpawns[ghost]; }
+
+    /**
+     * Gets the flags of a tile, a combination of {@link #WALL}, {@link #GATE}, {@link #POINT} and {@link #KEY}.
+     * @param position the position of the tile
+     * @return the flags of the tile
+     */
+    public byte getTile(int position) { return tiles.get(position); }
+
+    /**
+     * Gets a copy of the tile flags, so the caller can change them without touching this level.
+     * @return the tile flags row by row
+     */
+    public byte[] copyTiles() {
+        byte[] copy = new byte[tiles.capacity()];
+        tiles.duplicate().clear().get(copy);
+        return copy;
+    }
+
+    /**
+     * Gets a read-only view of the tile flags row by row.
+     * @return the tile flags, positioned at the first tile
+     */
+    public ByteBuffer getTiles() { return tiles.duplicate().clear(); }
+
+    /**
+     * Gets the CRC32 checksum of the level, computed over the dimensions, the starting positions and the tiles.
+     * Two levels with the same layout have the same checksum whatever file they were loaded from.
+     * @return the checksum of the level
+     */
+    public int getChecksum() {
+        if (!hasChecksum) {
+            checksum = computeChecksum();
+            hasChecksum = true;
+        }
+        return checksum;
+    }
+
+    /**
+     * Computes the checksum of the level from its tiles, whether it is known or not.
+     * @return the checksum of the level
+     */
+    int computeChecksum() {
+        ByteBuffer header = ByteBuffer.allocate(4 * (3 + ghostSpawns.length));
+        header.putInt(rows).putInt(cols).putInt(playerSpawn);
+        for (int ghostSpawn : ghostSpawns) {
+            header.putInt(ghostSpawn);
+        }
+        header.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        crc.update(getTiles());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,384 @@
+package ijae.xmauroa00;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the catalog of the custom levels in the levels directory.
+ * For each level it keeps the dimensions, the number of ghosts and points, the checksum,
+ * the last modified time and the size of the file, so the level picker can show, sort and filter
+ * the levels without reading them.
+ * <p>
+ * The catalog is saved in the levels directory and loaded when it is opened. A background thread compares it
+ * with the directory once and then follows the changes with a {@link WatchService}, a level is only parsed again
+ * when its file is added or changed.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class LevelCatalog {
+    /** The name of the catalog file in the levels directory. */
+    public static final String FILE_NAME = "catalog.idx";
+
+    private static final int MAGIC = 0x504D4C43;
+    private static final short VERSION = 1;
+
+    /**
+     * This enum lists the orders the levels can be sorted in.
+     */
+    public enum Sort {
+        NAME("Name", Comparator.comparing(Entry::getName, String.CASE_INSENSITIVE_ORDER)),
+        SIZE("Size", Comparator.comparingInt((Entry entry) -> entry.getRows() * entry.getCols()).reversed()),
+        GHOSTS("Ghosts", Comparator.comparingInt(Entry::getGhostCount).reversed()),
+        POINTS("Points", Comparator.comparingInt(Entry::getPointCount).reversed()),
+        NEWEST("Newest", Comparator.comparingLong(Entry::getLastModified).reversed());
+
+        private final String label;
+        private final Comparator<Entry> comparator;
+
+        Sort(String label, Comparator<Entry> comparator) {
+            this.label = label;
+            this.comparator = comparator;
+        }
+
+        public Comparator<Entry> getComparator() { return comparator; }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    /**
+     * This class holds what the catalog knows about one level file.
+     */
+    public static final class Entry {
+        private final String fileName;
+        private final int rows;
+        private final int cols;
+        private final int ghostCount;
+        private final int pointCount;
+        private final int checksum;
+        private final long lastModified;
+        private final long size;
+        private final boolean valid;
+
+        Entry(String fileName, int rows, int cols, int ghostCount, int pointCount, int checksum,
+              long lastModified, long size, boolean valid) {
+            this.fileName = fileName;
+            this.rows = rows;
+            this.cols = cols;
+            this.ghostCount = ghostCount;
+            this.pointCount = pointCount;
+            this.checksum = checksum;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.valid = valid;
+        }
+
+        public String getFileName() { return fileName; }
+        public int getRows() { return rows; }
+        public int getCols() { return cols; }
+        public int getGhostCount() { return ghostCount; }
+        public int getPointCount() { return pointCount; }
+        public int getChecksum() { return checksum; }
+        public long getLastModified() { return lastModified; }
+        public long getSize() { return size; }
+
+        /**
+         * Checks if the file held a valid level when it was indexed, invalid files are kept so they are not parsed again.
+         * @return true if the level is valid
+         */
+        public boolean isValid() { return valid; }
+
+        /**
+         * Gets the name of the level shown to the player,
+         * the file name without the extension, capitalized and with underscores as spaces.
+         * @return the name of the level
+         */
+        public String getName() {
+            String name = fileName.substring(0, fileName.lastIndexOf('.'));
+            return name.substring(0, 1).toUpperCase() + name.substring(1).replace('_', ' ');
+        }
+    }
+
+    private final Path levelsDir;
+    private final Path catalogFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Runnable onChange;
+    private Thread watcher;
+
+    private LevelCatalog(Path levelsDir) {
+        this.levelsDir = levelsDir;
+        this.catalogFile = levelsDir.resolve(FILE_NAME);
+    }
+
+    /**
+     * This method opens the catalog of a levels directory.
+     * It only reads the saved catalog, the levels are checked by {@link #start()}.
+     * @param levelsDir the levels directory
+     * @return the catalog
+     */
+    public static LevelCatalog open(Path levelsDir) {
+        LevelCatalog catalog = new LevelCatalog(levelsDir);
+        if (Files.exists(catalog.catalogFile)) {
+            try {
+                catalog.load();
+            } catch (IOException e) {
+                System.err.println("Rebuilding the level catalog, " + catalog.catalogFile + " is not valid: "
+                    + e.getMessage());
+                catalog.entries.clear();
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * This method starts the background thread which keeps the catalog up to date.
+     * Calling it again does nothing.
+     */
+    public synchronized void start() {
+        if (watcher != null) return;
+        watcher = new Thread(this::watch, "level-catalog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * This method stops the background thread and waits until it ends, the catalog is not updated after it.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void close() throws InterruptedException {
+        if (watcher == null) return;
+        watcher.interrupt();
+        watcher.join();
+    }
+
+    /**
+     * Sets the action run on the background thread after the catalog changed.
+     * @param onChange the action, or null for none
+     */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Gets the valid levels in the catalog.
+     * @return a snapshot of the valid levels, sorted by name
+     */
+    public List<Entry> getEntries() {
+        List<Entry> valid = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            if (entry.isValid()) valid.add(entry);
+        }
+        valid.sort(Sort.NAME.getComparator());
+        return valid;
+    }
+
+    /**
+     * Checks if a file is a custom level the catalog lists.
+     * @param fileName the name of the file
+     * @return true if the file is a custom level
+     */
+    private static boolean isCustomLevel(String fileName) {
+        return fileName.toLowerCase().endsWith(".txt") && fileName.lastIndexOf('.') > 0
+            && !StoryLevels.isStoryLevel(fileName);
+    }
+
+    /**
+     * This method is run by the background thread.
+     * It registers the watch first, so no change is missed, then brings the catalog up to date
+     * and handles the changes reported by the watch until the application exits.
+     */
+    private void watch() {
+        try (WatchService watchService = levelsDir.getFileSystem().newWatchService()) {
+            levelsDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            if (refresh()) changed();
+
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> fileNames = new HashSet<>();
+                boolean overflow = false;
+                // Collect every pending event first, a file being written reports several changes
+                do {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            fileNames.add(event.context().toString());
+                        }
+                    }
+                    if (!key.reset()) return;
+                    key = watchService.poll();
+                } while (key != null);
+
+                boolean changed = false;
+                if (overflow) {
+                    changed = refresh();
+                } else {
+                    for (String fileName : fileNames) {
+                        if (isCustomLevel(fileName)) changed |= update(levelsDir.resolve(fileName));
+                    }
+                }
+                if (changed) changed();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Error watching the levels directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method compares the catalog with the levels directory.
+     * New and changed levels are indexed, levels which are gone are removed.
+     * @return true if the catalog changed
+     * @throws IOException if the directory can not be listed
+     */
+    private boolean refresh() throws IOException {
+        Set<String> seen = new HashSet<>();
+        boolean changed = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(levelsDir,
+                file -> isCustomLevel(file.getFileName().toString()))) {
+            for (Path file : files) {
+                seen.add(file.getFileName().toString());
+                changed |= update(file);
+            }
+        }
+        changed |= entries.keySet().retainAll(seen);
+        return changed;
+    }
+
+    /**
+     * This method brings the entry of one level file up to date.
+     * The level is only parsed and validated if the file is new, or its last modified time or size changed.
+     * A level which can not be won is kept as an invalid entry, so it is not parsed again until it changes.
+     * No file is written, the level is compiled when it is played.
+     * @param file the level file
+     * @return true if the entry changed
+     */
+    private boolean update(Path file) {
+        String fileName = file.getFileName().toString();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return entries.remove(fileName) != null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long size = attributes.size();
+        Entry entry = entries.get(fileName);
+        if (entry != null && entry.getLastModified() == lastModified && entry.getSize() == size) {
+            return false;
+        }
+
+        try {
+            LevelValidator.Result result = LevelValidator.validate(file);
+            if (result.isValid()) {
+                Level level = result.getLevel();
+                entries.put(fileName, new Entry(fileName, level.getRows(), level.getCols(), level.getGhostCount(),
+                    countPoints(level), level.getChecksum(), lastModified, size, true));
+                return true;
+            }
+            System.err.println("Skipping level " + fileName + ": " + result.getDiagnostics().get(0));
+        } catch (IOException e) {
+            System.err.println("Skipping level " + fileName + ": " + e.getMessage());
+        }
+        entries.put(fileName, new Entry(fileName, 0, 0, 0, 0, 0, lastModified, size, false));
+        return true;
+    }
+
+    /**
+     * Counts the points on a level.
+     * @param level the level
+     * @return the number of tiles holding a point
+     */
+    private static int countPoints(Level level) {
+        ByteBuffer tiles = level.getTiles();
+        int count = 0;
+        while (tiles.hasRemaining()) {
+            if ((tiles.get() & Level.POINT) != 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * This method saves the catalog and runs the change action.
+     */
+    private void changed() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.err.println("Error saving the level catalog: " + e.getMessage());
+        }
+        Runnable action = onChange;
+        if (action != null) action.run();
+    }
+
+    /**
+     * This method reads the saved catalog.
+     * @throws IOException if the catalog can not be read or is not valid
+     */
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(catalogFile)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a level catalog file");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                    in.readInt(), in.readLong(), in.readLong(), in.readBoolean());
+                entries.put(entry.getFileName(), entry);
+            }
+        }
+    }
+
+    /**
+     * This method saves the catalog.
+     * The file is written under a temporary name and then renamed, so a reader never sees a partial file.
+     * @throws IOException if the catalog can not be written
+     */
+    private void save() throws IOException {
+        List<Entry> snapshot = new ArrayList<>(entries.values());
+        Path temp = Files.createTempFile(levelsDir, FILE_NAME, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(snapshot.size());
+                for (Entry entry : snapshot) {
+                    out.writeUTF(entry.getFileName());
+                    out.writeInt(entry.getRows());
+                    out.writeInt(entry.getCols());
+                    out.writeInt(entry.getGhostCount());
+                    out.writeInt(entry.getPointCount());
+                    out.writeInt(entry.getChecksum());
+                    out.writeLong(entry.getLastModified());
+                    out.writeLong(entry.getSize());
+                    out.writeBoolean(entry.isValid());
+                }
+            }
+            Files.move(temp, catalogFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class converts text levels into compiled level files and loads them.
+ * A compiled level has the extension {@code .pml} and holds, in big-endian order:
+ * <ul>
+ *  <li>the magic number {@code PMLV} and the format version</li>
+ *  <li>the number of rows and columns</li>
+ *  <li>the starting position of the player, the number of ghosts and the checksum of the level</li>
+ *  <li>the starting positions of the ghosts</li>
+ *  <li>the tile flags, one byte per tile row by row, the same layout as {@link Level} uses in memory</li>
+ * </ul>
+ * The file is loaded by mapping it into memory, so the tiles are not copied or parsed, the operating system
+ * reads the pages when they are used and shares them between game instances opening the same level.
+ * Loading trusts the checksum in the header instead of reading every tile to check it, the file is forced to the disk
+ * before it gets its name, and {@link #verify(Path)} checks a file on request.
+ * <p>
+ * Usage: {@code java -cp target/classes ijae.xmauroa00.LevelCompiler levels/level1.txt ...}
+ * to compile text levels, or {@code java -cp target/classes ijae.xmauroa00.LevelCompiler -verify levels/level1.pml ...}
+ * to check compiled levels against their checksum.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class LevelCompiler {
+    /** The extension of compiled level files. */
+    public static final String EXTENSION = ".pml";
+
+    private static final int MAGIC = 0x504D4C56;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 4 * 5;
+
+    private LevelCompiler() {
+    }
+
+    /**
+     * This method loads a text level, using its compiled file when it is up to date.
+     * If the compiled file is missing, older than the text file or can not be read, the text file is parsed
+     * and compiled again, a failure to write the compiled file does not stop the level from loading.
+     * @param textFile the text level file
+     * @return the level
+     * @throws IOException if the text level file can not be read
+     * @throws LevelFormatException if the text level file is not in the correct format
+     */
+    public static Level load(Path textFile) throws IOException {
+        Path compiledFile = getCompiledFile(textFile);
+        if (Files.exists(compiledFile)
+                && Files.getLastModifiedTime(compiledFile).compareTo(Files.getLastModifiedTime(textFile)) >= 0) {
+            try {
+                return read(compiledFile);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Compiling the level again, " + compiledFile + " is not valid: " + e.getMessage());
+            }
+        }
+
+        Level level = LevelParser.parse(textFile);
+        try {
+            write(level, compiledFile);
+        } catch (IOException e) {
+            System.err.println("Error writing compiled level: " + e.getMessage());
+        }
+        return level;
+    }
+
+    /**
+     * This method parses a text level and writes its compiled file next to it.
+     * @param textFile the text level file
+     * @return the compiled level file
+     * @throws IOException if a file can not be read or written
+     * @throws LevelFormatException if the text level file is not in the correct format
+     */
+    public static Path compile(Path textFile) throws IOException {
+        Path compiledFile = getCompiledFile(textFile);
+        write(LevelParser.parse(textFile), compiledFile);
+        return compiledFile;
+    }
+
+    /**
+     * Gets the compiled file of a text level, the same name with the {@link #EXTENSION} extension.
+     * @param textFile the text level file
+     * @return the compiled level file
+     */
+    public static Path getCompiledFile(Path textFile) {
+        String name = textFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return textFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    /**
+     * This method writes a compiled level file.
+     * The file is written under a temporary name, forced to the disk and then renamed, so neither a reader
+     * nor a crash can leave a partial file under the name.
+     * @param level the level to write
+     * @param file the compiled level file
+     * @throws IOException if the file can not be written
+     */
+    public static void write(Level level, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4 * level.getGhostCount());
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+            .putInt(level.getRows()).putInt(level.getCols())
+            .putInt(level.getPlayerSpawn()).putInt(level.getGhostCount()).putInt(level.getChecksum());
+        for (int i = 0; i < level.getGhostCount(); i++) {
+            header.putInt(level.getGhostSpawn(i));
+        }
+        header.flip();
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, level.getTiles()};
+                while (buffers[1].hasRemaining()) {
+                    channel.write(buffers);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * This method loads a compiled level file by mapping it into memory.
+     * The header is checked against the size of the file, the tiles are not read, so the level opens
+     * in the same time whatever its size. The checksum of the level is the one stored in the header.
+     * @param file the compiled level file
+     * @return the level, its tiles are backed by the mapped file
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if the file is not a valid compiled level
+     */
+    public static Level read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a compiled level file");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported compiled level version " + version);
+        }
+        buffer.getShort();
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        int playerSpawn = buffer.getInt();
+        int ghostCount = buffer.getInt();
+        int checksum = buffer.getInt();
+
+        long size = (long) rows * cols;
+        if (rows <= 0 || cols <= 0 || ghostCount < 0
+                || buffer.capacity() != HEADER_SIZE + 4L * ghostCount + size) {
+            throw new IllegalArgumentException("Compiled level file has an invalid size");
+        }
+        int[] ghostSpawns = new int[ghostCount];
+        for (int i = 0; i < ghostCount; i++) {
+            ghostSpawns[i] = buffer.getInt();
+            if (ghostSpawns[i] < 0 || ghostSpawns[i] >= size) {
+                throw new IllegalArgumentException("Compiled level file has a ghost outside the board");
+            }
+        }
+        if (playerSpawn < 0 || playerSpawn >= size) {
+            throw new IllegalArgumentException("Compiled level file has the player outside the board");
+        }
+        ByteBuffer tiles = buffer.slice();
+
+        return new Level(rows, cols, tiles, playerSpawn, ghostSpawns, checksum);
+    }
+
+    /**
+     * This method loads a compiled level file and checks its tiles against the checksum in the header,
+     * reading every tile.
+     * @param file the compiled level file
+     * @return the level, its tiles are backed by the mapped file
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if the file is not a valid compiled level or is damaged
+     */
+    public static Level verify(Path file) throws IOException {
+        Level level = read(file);
+        if (level.computeChecksum() != level.getChecksum()) {
+            throw new IllegalArgumentException("Compiled level file is damaged, the checksum does not match");
+        }
+        return level;
+    }
+
+    /**
+     * This method compiles the given text level files, or with {@code -verify} checks the given compiled level files.
+     * @param args the text level files, or {@code -verify} and the compiled level files
+     */
+    public static void main(String[] args) {
+        boolean verify = args.length > 0 && args[0].equals("-verify");
+        if (args.length == (verify ? 1 : 0)) {
+            System.err.println("Usage: LevelCompiler <level.txt>... | LevelCompiler -verify <level.pml>...");
+            System.exit(1);
+        }
+        int failed = 0;
+        for (int i = verify ? 1 : 0; i < args.length; i++) {
+            String arg = args[i];
+            try {
+                if (verify) {
+                    verify(Path.of(arg));
+                    System.out.println(arg + ": ok");
+                } else {
+                    System.out.println(arg + " -> " + compile(Path.of(arg)));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(arg + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,36 @@
+package ijae.xmauroa00;
+
+/**
+ * This exception is thrown when a level file is not in the correct format.
+ * It tells the line and the column where the problem was found.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class LevelFormatException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+    private final String description;
+
+    /**
+     * Constructs a new exception.
+     * @param line the line of the problem, starting from 1
+     * @param column the column of the problem, starting from 1, or 0 if the problem is about the whole line
+     * @param message the description of the problem
+     */
+    public LevelFormatException(int line, int column, String message) {
+        super("Line " + line + (column > 0 ? ", column " + column : "") + ": " + message);
+        this.line = line;
+        this.column = column;
+        this.description = message;
+    }
+
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+
+    /**
+     * Gets the description of the problem without its line and column.
+     * @return the description of the problem
+     */
+    public String getDescription() { return description; }
+}
@@ -0,0 +1,391 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class parses level files in a single streaming pass.
+ * The bytes are read through a {@link FileChannel} into a small buffer and checked one by one,
+ * so the file is never held in memory as a string and the tiles are written directly into the compact level.
+ * <p>
+ * The first line holds the number of rows and columns, the following lines hold the layout using the characters:
+ * <ul>
+ *  <li>W - wall</li>
+ *  <li>G - gate</li>
+ *  <li>P - player</li>
+ *  <li>C - ghost</li>
+ *  <li>K - key</li>
+ *  <li>o - empty field with point</li>
+ *  <li>. - empty field</li>
+ * </ul>
+ * A level must have exactly one player, one gate and one key.
+ * Whitespace around the lines is ignored. The first problem found is thrown as a {@link LevelFormatException}
+ * with its line and column.
+ * Every tile takes at least one byte of the file, so a header promising more tiles than the file has bytes
+ * is rejected before the tiles are allocated.
+ * The header can follow blank lines and the rows can be indented, so the parser also records where every row
+ * starts in the file, see {@link Layout}, for tools pointing at a tile.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class LevelParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** The tile flags of the plain tile characters, -1 for the characters which need more checks. */
+    private static final byte[] PLAIN_TILES = new byte[256];
+
+    static {
+        Arrays.fill(PLAIN_TILES, (byte) -1);
+        PLAIN_TILES['W'] = Level.WALL;
+        PLAIN_TILES['o'] = Level.POINT;
+        PLAIN_TILES['.'] = 0;
+    }
+
+    /**
+     * This class is a parsed level with the line and column of every row of its layout in the file.
+     */
+    static final class Layout {
+        private final Level level;
+        private final int firstLine;
+        private final int[] rowIndents;
+
+        private Layout(Level level, int firstLine, int[] rowIndents) {
+            this.level = level;
+            this.firstLine = firstLine;
+            this.rowIndents = rowIndents;
+        }
+
+        Level getLevel() { return level; }
+
+        /**
+         * Gets the line of a tile in the file.
+         * @param position the position of the tile
+         * @return the line, starting from 1
+         */
+        int getLine(int position) {
+            return firstLine + position / level.getCols();
+        }
+
+        /**
+         * Gets the column of a tile in the file, counted in bytes like the columns of a {@link LevelFormatException}.
+         * @param position the position of the tile
+         * @return the column, starting from 1
+         */
+        int getColumn(int position) {
+            int cols = level.getCols();
+            return rowIndents[position / cols] + position % cols + 1;
+        }
+    }
+
+    private enum State {
+        BEFORE_HEADER, ROWS, BETWEEN_DIMENSIONS, COLS, AFTER_HEADER, ROW_START, ROW, ROW_END, AFTER_LAYOUT
+    }
+
+    private final long inputLength;
+    private State state = State.BEFORE_HEADER;
+    private int line = 1;
+    private int column;
+    private long rows;
+    private long cols;
+    private byte[] tiles;
+    private int firstLayoutLine;
+    private int[] rowIndents;
+    private int row;
+    private int col;
+    private int playerSpawn = -1;
+    private int[] ghostSpawns = new int[16];
+    private int ghostCount;
+    private int gateCount;
+    private int keyCount;
+
+    private LevelParser(long inputLength) {
+        this.inputLength = inputLength;
+    }
+
+    /**
+     * This method parses a level file.
+     * @param file the level file
+     * @return the parsed level
+     * @throws IOException if the file can not be read
+     * @throws LevelFormatException if the file is not in the correct format
+     */
+    public static Level parse(Path file) throws IOException {
+        return parseLayout(file).getLevel();
+    }
+
+    /**
+     * This method parses a level file and records where its rows are in the file.
+     * @param file the level file
+     * @return the parsed level and the positions of its rows
+     * @throws IOException if the file can not be read
+     * @throws LevelFormatException if the file is not in the correct format
+     */
+    static Layout parseLayout(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LevelParser parser = new LevelParser(channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                parser.feed(buffer.array(), buffer.limit());
+                buffer.clear();
+            }
+            return parser.finish();
+        }
+    }
+
+    /**
+     * This method parses the level data.
+     * @param levelData the level data, so the level layout
+     * @return the parsed level
+     * @throws LevelFormatException if the level data is not in the correct format
+     */
+    public static Level parse(String levelData) {
+        return parseLayout(levelData).getLevel();
+    }
+
+    /**
+     * This method parses the level data and records where its rows are in the data.
+     * @param levelData the level data, so the level layout
+     * @return the parsed level and the positions of its rows
+     * @throws LevelFormatException if the level data is not in the correct format
+     */
+    static Layout parseLayout(String levelData) {
+        byte[] bytes = levelData.getBytes(StandardCharsets.UTF_8);
+        LevelParser parser = new LevelParser(bytes.length);
+        parser.feed(bytes, bytes.length);
+        return parser.finish();
+    }
+
+    /**
+     * This method checks the next bytes of the level file.
+     * Walls, points and empty fields inside a row are copied in a tight loop,
+     * every other byte goes through {@link #accept(byte)}.
+     * @param bytes the buffer holding the bytes
+     * @param length the number of bytes in the buffer
+     */
+    private void feed(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (state == State.ROW) {
+                int base = row * (int) cols;
+                int rowEnd = Math.min(length, i + (int) cols - col);
+                int start = i;
+                byte flags;
+                while (i < rowEnd && (flags = PLAIN_TILES[bytes[i] & 0xff]) >= 0) {
+                    tiles[base + col++] = flags;
+                    i++;
+                }
+                column += i - start;
+                if (i == length) break;
+            }
+            byte c = bytes[i];
+            if (c == '\n') {
+                endLine();
+                line++;
+                column = 0;
+            } else {
+                column++;
+                accept(c);
+            }
+        }
+    }
+
+    /**
+     * This method checks a byte which is not a line end, based on the part of the file being parsed.
+     * @param c the byte to check
+     */
+    private void accept(byte c) {
+        boolean blank = c == ' ' || c == '\t' || c == '\r';
+        boolean digit = c >= '0' && c <= '9';
+        switch (state) {
+            case BEFORE_HEADER:
+                if (digit) {
+                    rows = c - '0';
+                    state = State.ROWS;
+                } else if (!blank) {
+                    throw error("expected the number of rows");
+                }
+                break;
+            case ROWS:
+                if (digit) {
+                    rows = addDigit(rows, c);
+                } else if (c == ' ' || c == '\t') {
+                    state = State.BETWEEN_DIMENSIONS;
+                } else {
+                    throw error("expected 2 numbers, the rows and the columns");
+                }
+                break;
+            case BETWEEN_DIMENSIONS:
+                if (digit) {
+                    cols = c - '0';
+                    state = State.COLS;
+                } else if (!blank) {
+                    throw error("expected the number of columns");
+                }
+                break;
+            case COLS:
+                if (digit) {
+                    cols = addDigit(cols, c);
+                } else if (blank) {
+                    state = State.AFTER_HEADER;
+                } else {
+                    throw error("expected 2 numbers, the rows and the columns");
+                }
+                break;
+            case AFTER_HEADER:
+                if (!blank) throw error("expected 2 numbers, the rows and the columns");
+                break;
+            case ROW_START:
+                if (!blank) {
+                    state = State.ROW;
+                    rowIndents[row] = column - 1;
+                    tile(c);
+                }
+                break;
+            case ROW:
+                if (blank) {
+                    state = State.ROW_END;
+                } else {
+                    tile(c);
+                }
+                break;
+            case ROW_END:
+                if (!blank) throw error("unexpected character '" + (char) c + "' after the end of the row");
+                break;
+            default:
+                if (!blank) throw error("expected " + rows + " rows but found more");
+                break;
+        }
+    }
+
+    /**
+     * This method finishes the current line.
+     */
+    private void endLine() {
+        switch (state) {
+            case ROWS:
+            case BETWEEN_DIMENSIONS:
+                throw error("expected 2 numbers, the rows and the columns");
+            case COLS:
+            case AFTER_HEADER:
+                startLayout();
+                break;
+            case ROW_START:
+            case ROW:
+            case ROW_END:
+                if (col != cols) {
+                    throw error("invalid row length, expected " + cols + " but got " + col);
+                }
+                row++;
+                col = 0;
+                state = row == rows ? State.AFTER_LAYOUT : State.ROW_START;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * This method creates the tiles once the dimensions are known.
+     */
+    private void startLayout() {
+        if (rows == 0 || cols == 0) {
+            throw error("the level must have at least 1 row and 1 column");
+        }
+        if (rows * cols > Integer.MAX_VALUE - 8) {
+            throw error("the level has too many tiles");
+        }
+        if (rows * cols > inputLength) {
+            throw error("the level has " + rows * cols + " tiles but the file only has " + inputLength + " bytes");
+        }
+        tiles = new byte[(int) (rows * cols)];
+        rowIndents = new int[(int) rows];
+        firstLayoutLine = line + 1;
+        state = State.ROW_START;
+    }
+
+    /**
+     * This method stores a tile of the current row.
+     * @param c the character of the tile
+     */
+    private void tile(byte c) {
+        if (col == cols) {
+            throw error("invalid row length, expected " + cols + " but the row is longer");
+        }
+        int index = row * (int) cols + col;
+        switch (c) {
+            case 'W': tiles[index] = Level.WALL; break;
+            case 'o': tiles[index] = Level.POINT; break;
+            case '.': break;
+            case 'G':
+                if (++gateCount > 1) throw error("a level must have exactly one gate");
+                tiles[index] = Level.GATE;
+                break;
+            case 'K':
+                if (++keyCount > 1) throw error("a level must have exactly one key");
+                tiles[index] = Level.KEY;
+                break;
+            case 'P':
+                if (playerSpawn >= 0) throw error("a level must have exactly one player");
+                playerSpawn = index;
+                break;
+            case 'C':
+                if (ghostCount == ghostSpawns.length) {
+                    ghostSpawns = Arrays.copyOf(ghostSpawns, ghostCount * 2);
+                }
+                ghostSpawns[ghostCount++] = index;
+                break;
+            default:
+                throw error("invalid character '" + (char) (c & 0xff) + "', expected one of W, P, G, C, K, o or .");
+        }
+        col++;
+    }
+
+    /**
+     * This method checks the end of the file and creates the level.
+     * @return the parsed level and the positions of its rows
+     */
+    private Layout finish() {
+        if (column > 0) {
+            endLine();
+        }
+        if (state == State.BEFORE_HEADER) {
+            throw error("the level is empty");
+        }
+        if (state != State.AFTER_LAYOUT) {
+            throw error("expected " + rows + " rows but got " + row);
+        }
+        if (playerSpawn < 0) throw error("a level must have exactly one player");
+        if (gateCount == 0) throw error("a level must have exactly one gate");
+        if (keyCount == 0) throw error("a level must have exactly one key");
+
+        Level level = new Level((int) rows, (int) cols, ByteBuffer.wrap(tiles), playerSpawn,
+            Arrays.copyOf(ghostSpawns, ghostCount));
+        return new Layout(level, firstLayoutLine, rowIndents);
+    }
+
+    /**
+     * This method adds a digit to a dimension.
+     * @param value the dimension read so far
+     * @param c the digit
+     * @return the new dimension
+     */
+    private long addDigit(long value, byte c) {
+        value = value * 10 + (c - '0');
+        if (value > Integer.MAX_VALUE) {
+            throw error("the dimension is too large");
+        }
+        return value;
+    }
+
+    /**
+     * This method creates an exception for the current position.
+     * @param message the description of the problem
+     * @return the exception
+     */
+    private LevelFormatException error(String message) {
+        return new LevelFormatException(line, column, message);
+    }
+}
@@ -0,0 +1,354 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class validates level files before they are added to the levels.
+ * The format is checked by the single pass of the {@link LevelParser}. The parsed level is then flood filled
+ * from the player over the tiles which are not walls or the gate, marking the reached tiles in a {@link BitSet}
+ * a run of a row at a time, so a level whose key or gate the player can not reach is rejected even though its format is correct.
+ * Every problem found is returned as a {@link Diagnostic} with its line and column, so a tool can list them.
+ * The line and column of a tile are taken from where the parser found its row, so they stay right when the header
+ * follows blank lines or the rows are indented.
+ * It does not depend on JavaFX, so it can be used and measured without starting the game.
+ * <p>
+ * Usage: {@code java -cp target/classes ijae.xmauroa00.LevelValidator levels/level1.txt ...}
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class LevelValidator {
+    /**
+     * This enum represents how bad a problem is, a level with an error can not be played.
+     */
+    public enum Severity {
+        ERROR, WARNING
+    }
+
+    /**
+     * This enum represents the kinds of problems found.
+     */
+    public enum Problem {
+        /** The file is not in the level format, see {@link LevelParser}. */
+        FORMAT,
+        /** The player can not reach the key, so the gate never opens. */
+        KEY_UNREACHABLE,
+        /** The player can not reach the gate. */
+        GATE_UNREACHABLE,
+        /** Some points can not be collected, the level can still be won. */
+        POINTS_UNREACHABLE
+    }
+
+    /**
+     * This class is a problem found in a level.
+     */
+    public static final class Diagnostic {
+        private final Severity severity;
+        private final Problem problem;
+        private final int line;
+        private final int column;
+        private final String message;
+
+        /**
+         * Constructs a diagnostic.
+         * @param severity how bad the problem is
+         * @param problem the kind of problem
+         * @param line the line of the problem, starting from 1
+         * @param column the column of the problem, starting from 1, or 0 if the problem is about the whole line
+         * @param message the description of the problem
+         */
+        public Diagnostic(Severity severity, Problem problem, int line, int column, String message) {
+            this.severity = severity;
+            this.problem = problem;
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+
+        public Severity getSeverity() { return severity; }
+        public Problem getProblem() { return problem; }
+        public int getLine() { return line; }
+        public int getColumn() { return column; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "Line " + line + (column > 0 ? ", column " + column : "") + ": " + message;
+        }
+    }
+
+    /**
+     * This class is the result of validating a level.
+     */
+    public static final class Result {
+        private final Level level;
+        private final List<Diagnostic> diagnostics;
+
+        private Result(Level level, List<Diagnostic> diagnostics) {
+            this.level = level;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+        }
+
+        /**
+         * Gets the parsed level.
+         * @return the level, or null if the file is not in the level format
+         */
+        public Level getLevel() { return level; }
+
+        /**
+         * Gets the problems found, the errors first.
+         * @return the problems, empty if none were found
+         */
+        public List<Diagnostic> getDiagnostics() { return diagnostics; }
+
+        /**
+         * Checks if the level can be played, so no error was found. Warnings do not make a level invalid.
+         * @return true if the level is valid
+         */
+        public boolean isValid() {
+            return level != null && (diagnostics.isEmpty() || diagnostics.get(0).getSeverity() != Severity.ERROR);
+        }
+    }
+
+    private LevelValidator() {
+    }
+
+    /**
+     * This method validates the level file format and checks that the level can be won.
+     * @param content the level file content
+     * @return true if the level file is valid, false otherwise
+     */
+    public static boolean isValidLevelFormat(String content) {
+        return validate(content).isValid();
+    }
+
+    /**
+     * This method validates a level file.
+     * @param file the level file
+     * @return the parsed level and the problems found
+     * @throws IOException if the file can not be read
+     */
+    public static Result validate(Path file) throws IOException {
+        try {
+            return validate(LevelParser.parseLayout(file));
+        } catch (LevelFormatException e) {
+            return formatError(e);
+        }
+    }
+
+    /**
+     * This method validates the content of a level file.
+     * @param content the level file content
+     * @return the parsed level and the problems found
+     */
+    public static Result validate(String content) {
+        try {
+            return validate(LevelParser.parseLayout(content));
+        } catch (LevelFormatException e) {
+            return formatError(e);
+        }
+    }
+
+    /**
+     * This method checks that a parsed level can be won.
+     * The reached tiles are flood filled from the player, a tile is reached if it is not a wall or the gate.
+     * The gate is entered to win, so it is reachable if a reached tile is next to it.
+     * The level is not read from a file here, so the lines and columns of the problems are the ones of a level file
+     * with the header on the first line and rows which are not indented.
+     * @param level the level
+     * @return the level and the problems found
+     */
+    public static Result validate(Level level) {
+        return validate(level, null);
+    }
+
+    /**
+     * This method checks that a parsed level file can be won.
+     * @param layout the parsed level and the positions of its rows in the file
+     * @return the level and the problems found
+     */
+    private static Result validate(LevelParser.Layout layout) {
+        return validate(layout.getLevel(), layout);
+    }
+
+    /**
+     * This method checks that a level can be won.
+     * @param level the level
+     * @param layout the positions of the rows of the level in its file, or null if they are not known
+     * @return the level and the problems found
+     */
+    private static Result validate(Level level, LevelParser.Layout layout) {
+        int cols = level.getCols();
+        byte[] tiles = level.copyTiles();
+        int size = tiles.length;
+        BitSet reached = new FloodFill(tiles, cols).fill(level.getPlayerSpawn());
+
+        int key = -1;
+        int gate = -1;
+        int unreachablePoints = 0;
+        int firstUnreachablePoint = -1;
+        for (int position = 0; position < size; position++) {
+            byte tile = tiles[position];
+            if ((tile & Level.KEY) != 0) key = position;
+            if ((tile & Level.GATE) != 0) gate = position;
+            if ((tile & Level.POINT) != 0 && !reached.get(position)) {
+                if (unreachablePoints++ == 0) firstUnreachablePoint = position;
+            }
+        }
+
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        if (!reached.get(key)) {
+            diagnostics.add(diagnostic(Severity.ERROR, Problem.KEY_UNREACHABLE, key, cols, layout,
+                "the player can not reach the key"));
+        }
+        if (!isNextToReached(reached, gate, cols, size)) {
+            diagnostics.add(diagnostic(Severity.ERROR, Problem.GATE_UNREACHABLE, gate, cols, layout,
+                "the player can not reach the gate"));
+        }
+        if (unreachablePoints > 0) {
+            diagnostics.add(diagnostic(Severity.WARNING, Problem.POINTS_UNREACHABLE, firstUnreachablePoint, cols,
+                layout, unreachablePoints + (unreachablePoints == 1 ? " point" : " points")
+                    + " can not be collected, this is the first one"));
+        }
+        return new Result(level, diagnostics);
+    }
+
+    /**
+     * This class flood fills the tiles the player can walk on before the gate opens.
+     * It fills a run of walkable tiles along a row at a time: the run around a seed tile is marked with one
+     * {@link BitSet#set(int, int)}, and the start of every new run in the rows above and below it is pushed
+     * as a seed. Each tile is read a few times at most, so the fill is linear in the tiles with a small stack.
+     */
+    private static final class FloodFill {
+        private final byte[] tiles;
+        private final int cols;
+        private final BitSet reached;
+        private int[] stack = new int[64];
+        private int top;
+
+        FloodFill(byte[] tiles, int cols) {
+            this.tiles = tiles;
+            this.cols = cols;
+            reached = new BitSet(tiles.length);
+        }
+
+        /**
+         * Fills the tiles reached from a start tile.
+         * @param start the position of the player
+         * @return the reached tiles
+         */
+        BitSet fill(int start) {
+            push(start);
+            while (top > 0) {
+                int seed = stack[--top];
+                if (reached.get(seed)) continue;
+                int rowStart = seed - seed % cols;
+                int rowEnd = rowStart + cols - 1;
+                int left = seed;
+                while (left > rowStart && isWalkable(left - 1)) left--;
+                int right = seed;
+                while (right < rowEnd && isWalkable(right + 1)) right++;
+                reached.set(left, right + 1);
+                if (rowStart >= cols) pushRuns(left - cols, right - cols);
+                if (rowEnd + cols < tiles.length) pushRuns(left + cols, right + cols);
+            }
+            return reached;
+        }
+
+        /**
+         * Pushes the first tile of every walkable run not yet reached within a part of a row.
+         * @param from the position of the first tile of the part
+         * @param to the position of the last tile of the part
+         */
+        private void pushRuns(int from, int to) {
+            boolean inRun = false;
+            for (int position = from; position <= to; position++) {
+                boolean open = isWalkable(position) && !reached.get(position);
+                if (open && !inRun) push(position);
+                inRun = open;
+            }
+        }
+
+        private boolean isWalkable(int position) {
+            return (tiles[position] & (Level.WALL | Level.GATE)) == 0;
+        }
+
+        private void push(int position) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = position;
+        }
+    }
+
+    /**
+     * Checks if a tile has a reached neighbour.
+     * @param reached the reached tiles
+     * @param position the position of the tile
+     * @param cols the number of columns
+     * @param size the number of tiles
+     * @return true if a neighbour of the tile is reached
+     */
+    private static boolean isNextToReached(BitSet reached, int position, int cols, int size) {
+        int col = position % cols;
+        return (position >= cols && reached.get(position - cols))
+            || (position + cols < size && reached.get(position + cols))
+            || (col != 0 && reached.get(position - 1))
+            || (col != cols - 1 && reached.get(position + 1));
+    }
+
+    /**
+     * Creates a diagnostic for a tile at its line and column in the file.
+     * Without the positions of the rows the layout is taken to start on the second line, without indentation.
+     * @return the diagnostic
+     */
+    private static Diagnostic diagnostic(Severity severity, Problem problem, int position, int cols,
+            LevelParser.Layout layout, String message) {
+        if (layout != null) {
+            return new Diagnostic(severity, problem, layout.getLine(position), layout.getColumn(position), message);
+        }
+        return new Diagnostic(severity, problem, position / cols + 2, position % cols + 1, message);
+    }
+
+    /**
+     * Creates the result of a file which is not in the level format.
+     * @param e the first format problem found by the parser
+     * @return the result
+     */
+    private static Result formatError(LevelFormatException e) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        diagnostics.add(new Diagnostic(Severity.ERROR, Problem.FORMAT, e.getLine(), e.getColumn(), e.getDescription()));
+        return new Result(null, diagnostics);
+    }
+
+    /**
+     * This method validates the given level files and prints their problems.
+     * @param args the level files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: LevelValidator <level.txt>...");
+            System.exit(1);
+        }
+        int invalid = 0;
+        for (String arg : args) {
+            try {
+                Result result = validate(Path.of(arg));
+                System.out.println(arg + ": " + (result.isValid() ? "valid" : "INVALID"));
+                for (Diagnostic diagnostic : result.getDiagnostics()) {
+                    System.out.println("  " + diagnostic.getSeverity() + " " + diagnostic.getProblem() + " "
+                        + diagnostic);
+                }
+                if (!result.isValid()) invalid++;
+            } catch (IOException e) {
+                System.err.println(arg + ": " + e.getMessage());
+                invalid++;
+            }
+        }
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+}
@@ -4,17 +4,29 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.DialogPane;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
@@ -32,19 +44,34 @@ import javafx.stage.Stage;
 public class Menu extends Application {
 
     private static final int WINDOW_WIDTH = 400;
-    private static final int WINDOW_HEIGHT = 500;
+    private static final int WINDOW_HEIGHT = 560;
     private VBox menuContainer;
     private GameBoard gameBoard;
     private double currentSpeed = 200;
+    private GhostMode currentGhostMode = GhostMode.RANDOM;
+    private static LevelCatalog levelCatalog;
+
+    /**
+     * Constructs the menu, it is shown by {@link #start(Stage)}.
+     */
+    public Menu() {
+    }
 
     /**
      * This is the main entry point for the game.
      * It creates the main menu and allows the user to select the game mode, speed, and upload levels.
      * It also allows the user to view high scores and exit the game.
+     * The sprites are loaded in the background while the menu is shown, the buttons starting a game
+     * are enabled once they are ready. If they can not be loaded the error is shown and the buttons stay disabled,
+     * the sprites are loaded again the next time the menu is shown.
      * @param primaryStage the primary stage for the game
      */
     @Override
     public void start(Stage primaryStage) {
+        CompletableFuture<SpriteAtlas> sprites = SpriteAtlas.load(Cell.getCellSize());
+        // start reading the high scores in the background, so game over and the high score window do not wait
+        getHighScores();
+
         menuContainer = new VBox(20);
         menuContainer.setAlignment(Pos.CENTER);
         menuContainer.setStyle("-fx-background-color: black;");
@@ -55,22 +82,43 @@ public class Menu extends Application {
 
         Button startButton = createMenuButton("Start Game");
         Button speedButton = createMenuButton("Speed: Normal");
+        Button ghostModeButton = createMenuButton("Ghosts: Random");
         Button highScoresButton = createMenuButton("High Scores");
         Button uploadLevelButton = createMenuButton("Upload Level");
+        Button replayButton = createMenuButton("Watch Replay");
         Button exitButton = createMenuButton("Exit");
 
         startButton.setOnAction(e -> startGame());
         speedButton.setOnAction(e -> toggleSpeed(speedButton));
+        ghostModeButton.setOnAction(e -> toggleGhostMode(ghostModeButton));
         highScoresButton.setOnAction(e -> showHighScores());
         uploadLevelButton.setOnAction(e -> uploadLevel(primaryStage));
+        replayButton.setOnAction(e -> watchReplay(primaryStage));
         exitButton.setOnAction(e -> primaryStage.close());
 
+        startButton.setDisable(true);
+        replayButton.setDisable(true);
+        sprites.whenCompleteAsync((atlas, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                System.err.println("Error loading sprites: " + cause);
+                showAlert(Alert.AlertType.ERROR, "Error", "The game images could not be loaded",
+                    "Return to the menu to try again.\n" + cause.getMessage());
+                return;
+            }
+            StartupTimes.sinceStart("sprites ready");
+            startButton.setDisable(false);
+            replayButton.setDisable(false);
+        }, Platform::runLater);
+
         menuContainer.getChildren().addAll(
             titleText,
             startButton,
             speedButton,
+            ghostModeButton,
             highScoresButton,
             uploadLevelButton,
+            replayButton,
             exitButton
         );
 
@@ -79,6 +127,7 @@ public class Menu extends Application {
         primaryStage.setScene(scene);
         primaryStage.setResizable(false);
         primaryStage.show();
+        StartupTimes.firstFrameSinceStart(scene, "first menu frame");
     }
 
     /**
@@ -146,6 +195,25 @@ public class Menu extends Application {
         }
     }
 
+    /**
+     * This method toggles how the ghosts move.
+     * It changes the ghosts between moving randomly and chasing the player.
+     * @param ghostModeButton the button to toggle the ghost mode
+     */
+    private void toggleGhostMode(Button ghostModeButton) {
+        if (currentGhostMode == GhostMode.RANDOM) {
+            currentGhostMode = GhostMode.CHASE;
+            ghostModeButton.setText("Ghosts: Chase");
+        } else {
+            currentGhostMode = GhostMode.RANDOM;
+            ghostModeButton.setText("Ghosts: Random");
+        }
+
+        if (gameBoard != null) {
+            gameBoard.setGhostMode(currentGhostMode);
+        }
+    }
+
     /**
      * This method starts the game.
      * It makes a mode selection dialog and allows the user to select the game mode.
@@ -189,26 +257,36 @@ public class Menu extends Application {
 
     /**
      * This method starts the story mode.
-     * It loads the level1.txt, which is the first level of the game(story mode), and starts the game.
+     * It loads the first story level, found by {@link StoryLevels} like the levels after it, and starts the game.
      */
     private void startStoryMode() {
+        long clickNanos = System.nanoTime();
+        StoryLevels storyLevels = StoryLevels.scan(Path.of("levels"));
+        if (storyLevels.getCount() == 0) {
+            System.err.println("Error loading level file: no story levels in the levels directory");
+            return;
+        }
         try {
-            String levelData = Files.readString(Path.of("levels/level1.txt"));
+            Level layout = LevelCompiler.load(storyLevels.getFile(1));
             Stage primaryStage = (Stage) menuContainer.getScene().getWindow(); // Get the primary stage
-            gameBoard = new GameBoard(levelData, 1, true, primaryStage); // Pass primaryStage
+            gameBoard = new GameBoard(layout, 1, true, primaryStage); // Pass primaryStage
             gameBoard.setGameSpeed(currentSpeed);
+            gameBoard.setGhostMode(currentGhostMode);
 
             Scene gameScene = new Scene(gameBoard);
             primaryStage.setScene(gameScene);
             gameBoard.requestFocus();
-        } catch (IOException e) {
+            StartupTimes.firstFrameSinceClick(gameScene, "first game frame", clickNanos);
+        } catch (IOException | LevelFormatException e) {
             System.err.println("Error loading level file: " + e.getMessage());
         }
     }
 
     /**
      * This method shows the custom levels when choosing from the menu.
-     * It loads all the custom levels from the levels directory and allows the user to select a level.
+     * The levels come from the {@link LevelCatalog}, so the list opens without reading the level files
+     * and follows the changes to the levels directory while it is open.
+     * The levels can be filtered by name and sorted, and a level is only loaded when it is played.
      */
     private void showCustomLevels() {
         Stage levelSelect = new Stage();
@@ -224,61 +302,105 @@ public class Menu extends Application {
         titleText.setStyle("-fx-fill: yellow;");
         levelContainer.getChildren().add(titleText);
 
-        try {
-            File levelsDir = new File("levels");
-            File[] levelFiles = levelsDir.listFiles((dir, name) -> {
-                return name.toLowerCase().endsWith(".txt") && !name.matches("level[0-9]+\\.txt");
-            });
-
-            if (levelFiles != null && levelFiles.length > 0) {
-                for (File levelFile : levelFiles) {
-                    String levelName = levelFile.getName();
-                    levelName = levelName.substring(0, levelName.lastIndexOf('.'));
-                    levelName = levelName.substring(0, 1).toUpperCase() + 
-                               levelName.substring(1).replace('_', ' ');
-
-                    Button levelButton = createMenuButton(levelName);
-                    levelButton.setOnAction(e -> {
-                        try {
-                            String levelData = Files.readString(levelFile.toPath());
-                            Stage primaryStage = (Stage) menuContainer.getScene().getWindow(); // Get the primary stage
-                            gameBoard = new GameBoard(levelData, 1, false, primaryStage); // Pass primaryStage
-                            gameBoard.setGameSpeed(currentSpeed);
-
-                            Scene gameScene = new Scene(gameBoard);
-                            primaryStage.setScene(gameScene);
-                            gameBoard.requestFocus();
-
-                            levelSelect.close();
-                        } catch (IOException ex) {
-                            System.err.println("Error loading level file: " + ex.getMessage());
-                        }
-                    });
-                    levelContainer.getChildren().add(levelButton);
-                }
-            } else {
-                Text noLevelsText = new Text("No custom levels available!");
-                noLevelsText.setFont(Font.font("Arial", 20));
-                noLevelsText.setStyle("-fx-fill: white;");
-                levelContainer.getChildren().add(noLevelsText);
+        LevelCatalog catalog = getLevelCatalog();
+        ObservableList<LevelCatalog.Entry> levels = FXCollections.observableArrayList(catalog.getEntries());
+        FilteredList<LevelCatalog.Entry> filteredLevels = new FilteredList<>(levels);
+        SortedList<LevelCatalog.Entry> sortedLevels = new SortedList<>(filteredLevels);
+        catalog.setOnChange(() -> Platform.runLater(() -> levels.setAll(catalog.getEntries())));
+        levelSelect.setOnHidden(e -> catalog.setOnChange(null));
+
+        TextField filterField = new TextField();
+        filterField.setPromptText("Filter by name");
+        filterField.textProperty().addListener((observable, oldText, text) -> {
+            String filter = text.trim().toLowerCase();
+            filteredLevels.setPredicate(filter.isEmpty() ? null
+                : entry -> entry.getName().toLowerCase().contains(filter));
+        });
+
+        ComboBox<LevelCatalog.Sort> sortBox = new ComboBox<>(FXCollections.observableArrayList(LevelCatalog.Sort.values()));
+        sortBox.valueProperty().addListener((observable, oldSort, sort) ->
+            sortedLevels.setComparator(sort.getComparator()));
+        sortBox.setValue(LevelCatalog.Sort.NAME);
+
+        HBox controls = new HBox(10, filterField, sortBox);
+        controls.setAlignment(Pos.CENTER);
+
+        Text noLevelsText = new Text("No custom levels available!");
+        noLevelsText.setFont(Font.font("Arial", 20));
+
+        ListView<LevelCatalog.Entry> levelList = new ListView<>(sortedLevels);
+        levelList.setPlaceholder(noLevelsText);
+        levelList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(LevelCatalog.Entry entry, boolean empty) {
+                super.updateItem(entry, empty);
+                setText(empty || entry == null ? null : entry.getName() + "  (" + entry.getRows() + "x"
+                    + entry.getCols() + ", " + entry.getGhostCount() + " ghosts, " + entry.getPointCount() + " points)");
+            }
+        });
+        VBox.setVgrow(levelList, Priority.ALWAYS);
+
+        Button playButton = createMenuButton("Play");
+        playButton.disableProperty().bind(levelList.getSelectionModel().selectedItemProperty().isNull());
+        playButton.setOnAction(e -> playCustomLevel(levelList.getSelectionModel().getSelectedItem(), levelSelect));
+        levelList.setOnMouseClicked(e -> {
+            LevelCatalog.Entry entry = levelList.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && entry != null) {
+                playCustomLevel(entry, levelSelect);
             }
+        });
 
-            Button backButton = createMenuButton("Back to Menu");
-            backButton.setOnAction(e -> levelSelect.close());
-            levelContainer.getChildren().add(backButton);
+        Button backButton = createMenuButton("Back to Menu");
+        backButton.setOnAction(e -> levelSelect.close());
 
-            Scene scene = new Scene(levelContainer, 300, 400);
-            levelSelect.setScene(scene);
-            levelSelect.showAndWait();
+        levelContainer.getChildren().addAll(controls, levelList, playButton, backButton);
 
-        } catch (Exception e) {
-            System.err.println("Error loading levels: " + e.getMessage());
+        Scene scene = new Scene(levelContainer, 450, 550);
+        levelSelect.setScene(scene);
+        levelSelect.showAndWait();
+    }
+
+    /**
+     * Gets the catalog of the custom levels, it is opened and started the first time the custom levels are shown.
+     * @return the catalog of the levels directory
+     */
+    private static synchronized LevelCatalog getLevelCatalog() {
+        if (levelCatalog == null) {
+            levelCatalog = LevelCatalog.open(Path.of("levels"));
+            levelCatalog.start();
+        }
+        return levelCatalog;
+    }
+
+    /**
+     * This method loads a custom level and starts the game on it.
+     * @param entry the catalog entry of the level
+     * @param levelSelect the level selection window, closed when the game starts
+     */
+    private void playCustomLevel(LevelCatalog.Entry entry, Stage levelSelect) {
+        long clickNanos = System.nanoTime();
+        try {
+            Level layout = LevelCompiler.load(Path.of("levels").resolve(entry.getFileName()));
+            Stage primaryStage = (Stage) menuContainer.getScene().getWindow(); // Get the primary stage
+            gameBoard = new GameBoard(layout, 1, false, primaryStage); // Pass primaryStage
+            gameBoard.setGameSpeed(currentSpeed);
+            gameBoard.setGhostMode(currentGhostMode);
+
+            Scene gameScene = new Scene(gameBoard);
+            primaryStage.setScene(gameScene);
+            gameBoard.requestFocus();
+            StartupTimes.firstFrameSinceClick(gameScene, "first game frame", clickNanos);
+
+            levelSelect.close();
+        } catch (IOException | LevelFormatException e) {
+            System.err.println("Error loading level file: " + e.getMessage());
         }
     }
 
     /**
      * This method shows the high scores when choosing from the menu.
-     * It loads the high scores from a file called highscores.txt and displays them.
+     * It shows the known high scores at once, then reads the highscores.txt file on the writer thread
+     * and shows the scores saved by other game instances when the file is read.
      */
     private void showHighScores() {
         Stage highScoreStage = new Stage();
@@ -293,22 +415,18 @@ public class Menu extends Application {
         titleText.setFont(Font.font("Arial", 32));
         titleText.setStyle("-fx-fill: yellow;");
 
-        scoreContainer.getChildren().add(titleText);
-
-        try {
-            List<String> scores = readHighScores();
-            for (String score : scores) {
-                Text scoreText = new Text(score);
-                scoreText.setFont(Font.font("Arial", 20));
-                scoreText.setStyle("-fx-fill: white;");
-                scoreContainer.getChildren().add(scoreText);
+        VBox scoreList = new VBox(10);
+        scoreList.setAlignment(Pos.CENTER);
+        scoreContainer.getChildren().addAll(titleText, scoreList);
+        showScores(scoreList);
+        // pick up the scores saved by other game instances without waiting for the file
+        getHighScores().refresh().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                System.err.println("Error reading high scores: " + error.getMessage());
+            } else {
+                showScores(scoreList);
             }
-        } catch (IOException e) {
-            Text errorText = new Text("No high scores yet!");
-            errorText.setFont(Font.font("Arial", 20));
-            errorText.setStyle("-fx-fill: white;");
-            scoreContainer.getChildren().add(errorText);
-        }
+        }, Platform::runLater);
 
         Button backButton = createMenuButton("Back to Menu");
         backButton.setOnAction(e -> highScoreStage.close());
@@ -320,57 +438,95 @@ public class Menu extends Application {
     }
 
     private static final String HIGH_SCORES_FILE = "highscores.txt";
-    private static final int MAX_HIGH_SCORES = 5;
+    private static HighScores highScores;
+
+    /**
+     * Gets the high scores, the highscores.txt file is opened the first time they are used
+     * and read on the writer thread of the high scores.
+     * @return the high scores
+     */
+    private static synchronized HighScores getHighScores() {
+        if (highScores == null) {
+            highScores = HighScores.open(Path.of(HIGH_SCORES_FILE));
+        }
+        return highScores;
+    }
 
     /**
      * This method saves the high score to the highscores.txt file.
      * It also keeps the top 5 high scores.
+     * The score is written on a background thread, so the game does not wait for the disk.
      * @param score the score to save
      */
     public static void saveHighScore(int score) {
-        try {
-            List<Integer> scores = new ArrayList<>();
-            
-            try {
-                List<String> existingScores = Files.readAllLines(Path.of(HIGH_SCORES_FILE));
-                for (String line : existingScores) {
-                    scores.add(Integer.parseInt(line.trim()));
-                }
-            } catch (IOException e) {
-            }
+        getHighScores().submit(score);
+    }
 
-            scores.add(score);
-            scores.sort(Collections.reverseOrder());
+    private static final String LEADERBOARDS_DIR = "leaderboards";
+    private static final int LEVEL_TOP = 5;
+    private static Leaderboards leaderboards;
 
-            while (scores.size() > MAX_HIGH_SCORES) {
-                scores.remove(scores.size() - 1);
-            }
+    /**
+     * Gets the per-level leaderboards, they are stored in the leaderboards directory.
+     * @return the leaderboards
+     */
+    private static synchronized Leaderboards getLeaderboards() {
+        if (leaderboards == null) {
+            leaderboards = Leaderboards.open(Path.of(LEADERBOARDS_DIR));
+        }
+        return leaderboards;
+    }
 
-            List<String> scoreStrings = new ArrayList<>();
-            for (Integer s : scores) {
-                scoreStrings.add(s.toString());
-            }
-            Files.write(Path.of(HIGH_SCORES_FILE), scoreStrings);
+    /**
+     * This method saves the score of a level to the leaderboard of the level and the game speed.
+     * The player is the name of the user running the game.
+     * The entry is written and its rank found on a background thread, so the game does not wait for the disk.
+     * @param level the level which was played
+     * @param speedMillis the length of a game step in milliseconds
+     * @param score the score on the level
+     * @param ticks the number of game ticks the level was played for
+     * @return the rank of the score on the leaderboard, completed on the writer thread,
+     *         0 if the leaderboard can not be written
+     */
+    public static CompletableFuture<Integer> saveLevelScore(Level level, int speedMillis, int score, long ticks) {
+        Leaderboards.Entry entry = new Leaderboards.Entry(score, (int) Math.min(ticks, Integer.MAX_VALUE),
+            System.currentTimeMillis(), System.getProperty("user.name", ""));
+        return getLeaderboards().submit(level.getChecksum(), speedMillis, entry);
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error saving high score: " + e.getMessage());
-        }
+    /**
+     * This method reads the best entries of the leaderboard of a level and game speed in the background,
+     * after the scores saved before it are written.
+     * @param level the level
+     * @param speedMillis the length of a game step in milliseconds
+     * @return the best entries, completed on the writer thread, none if the leaderboard can not be read
+     */
+    public static CompletableFuture<List<Leaderboards.Entry>> readLevelTop(Level level, int speedMillis) {
+        return getLeaderboards().readTop(level.getChecksum(), speedMillis, LEVEL_TOP);
     }
 
     /**
-     * This method reads the high scores from the highscores.txt file.
+     * This method shows the known high scores, it does not read the file.
      * It also formats the high scores to be displayed in the high scores window.
-     * @return the high scores
+     * @param scoreList the box showing the high scores
      */
-    private List<String> readHighScores() throws IOException {
+    private void showScores(VBox scoreList) {
         List<String> scores = new ArrayList<>();
-        List<String> rawScores = Files.readAllLines(Path.of(HIGH_SCORES_FILE));
-        
+        List<Integer> rawScores = getHighScores().getScores();
         for (int i = 0; i < rawScores.size(); i++) {
             scores.add((i + 1) + ". " + rawScores.get(i));
         }
-        
-        return scores;
+        if (scores.isEmpty()) {
+            scores.add("No high scores yet!");
+        }
+
+        scoreList.getChildren().clear();
+        for (String score : scores) {
+            Text scoreText = new Text(score);
+            scoreText.setFont(Font.font("Arial", 20));
+            scoreText.setStyle("-fx-fill: white;");
+            scoreList.getChildren().add(scoreText);
+        }
     }
 
     /**
@@ -388,43 +544,41 @@ public class Menu extends Application {
         File selectedFile = fileChooser.showOpenDialog(primaryStage);
         if (selectedFile != null) {
             try {
-                String levelContent = Files.readString(selectedFile.toPath());
-                if (isValidLevelFormat(levelContent)) {
-                    String originalName = selectedFile.getName();
-                    String nameWithoutExtension = originalName.substring(0, originalName.lastIndexOf('.'));
-                    String fileName = nameWithoutExtension + ".txt";
-                    
-                    Path levelsDir = Path.of("levels");
-                    if (!Files.exists(levelsDir)) {
-                        Files.createDirectory(levelsDir);
-                    }
-                    
-                    if (Files.exists(levelsDir.resolve(fileName))) {
-                        boolean overwrite = showConfirmationDialog(
-                            "Level already exists",
-                            "A level with this name already exists. Do you want to overwrite it?"
-                        );
-                        if (!overwrite) {
-                            return;
-                        }
-                    }
-                    
-                    Files.write(levelsDir.resolve(fileName), levelContent.getBytes());
-
-                    showAlert(Alert.AlertType.INFORMATION, 
-                        "Success", 
-                        "Level uploaded successfully!", 
-                        "The level '" + nameWithoutExtension + "' has been added to your levels."
-                    );
-                } else {
-                    showAlert(Alert.AlertType.ERROR, 
-                        "Invalid Format", 
-                        "Invalid level format", 
-                        "The level file must follow the correct format:\n" +
-                        "First line: rows columns\n" +
-                        "Following lines: level layout using W,P,G,C,K,o characters"
+                LevelValidator.Result result = LevelValidator.validate(selectedFile.toPath());
+                if (!result.isValid()) {
+                    showInvalidLevel(result);
+                    return;
+                }
+                Level level = result.getLevel();
+                
+                String originalName = selectedFile.getName();
+                String nameWithoutExtension = originalName.substring(0, originalName.lastIndexOf('.'));
+                String fileName = nameWithoutExtension + ".txt";
+                
+                Path levelsDir = Path.of("levels");
+                if (!Files.exists(levelsDir)) {
+                    Files.createDirectory(levelsDir);
+                }
+                
+                if (Files.exists(levelsDir.resolve(fileName))) {
+                    boolean overwrite = showConfirmationDialog(
+                        "Level already exists",
+                        "A level with this name already exists. Do you want to overwrite it?"
                     );
+                    if (!overwrite) {
+                        return;
+                    }
                 }
+                
+                Files.copy(selectedFile.toPath(), levelsDir.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+                LevelCompiler.write(level, LevelCompiler.getCompiledFile(levelsDir.resolve(fileName)));
+
+                showAlert(Alert.AlertType.INFORMATION, 
+                    "Success", 
+                    "Level uploaded successfully!", 
+                    "The level '" + nameWithoutExtension + "' has been added to your levels."
+                        + formatDiagnostics(result)
+                );
             } catch (IOException e) {
                 showAlert(Alert.AlertType.ERROR, 
                     "Error", 
@@ -436,38 +590,109 @@ public class Menu extends Application {
     }
 
     /**
-     * This method validates the level file format.
-     * It checks if the level file is in the correct format.
-     * @param content the level file content
-     * @return true if the level file is valid, false otherwise
+     * This method shows why an uploaded level was rejected.
+     * A format problem is shown with the rules of the format, a level which can not be won with its problems.
+     * @param result the result of validating the level
      */
-    private boolean isValidLevelFormat(String content) {
-        try {
-            String[] lines = content.trim().split("\\r?\\n");
-            if (lines.length < 2) return false;
+    private void showInvalidLevel(LevelValidator.Result result) {
+        if (result.getLevel() == null) {
+            showAlert(Alert.AlertType.ERROR, 
+                "Invalid Format", 
+                "Invalid level format", 
+                result.getDiagnostics().get(0) + "\n\n" +
+                "The level file must follow the correct format:\n" +
+                "First line: rows columns\n" +
+                "Following lines: level layout using W,P,G,C,K,o,. characters"
+            );
+        } else {
+            showAlert(Alert.AlertType.ERROR, 
+                "Unsolvable Level", 
+                "The level can not be won", 
+                "The player must be able to walk to the key and then to the gate." + formatDiagnostics(result)
+            );
+        }
+    }
 
-            String[] dimensions = lines[0].trim().split("\\s+");
-            if (dimensions.length != 2) return false;
-            int rows = Integer.parseInt(dimensions[0]);
-            int cols = Integer.parseInt(dimensions[1]);
+    /**
+     * This method lists the problems found in a level, one per line.
+     * @param result the result of validating the level
+     * @return the problems after an empty line, or an empty string if there are none
+     */
+    private static String formatDiagnostics(LevelValidator.Result result) {
+        StringBuilder text = new StringBuilder();
+        for (LevelValidator.Diagnostic diagnostic : result.getDiagnostics()) {
+            text.append(text.length() == 0 ? "\n\n" : "\n")
+                .append(diagnostic.getSeverity() == LevelValidator.Severity.ERROR ? "Error: " : "Warning: ")
+                .append(diagnostic);
+        }
+        return text.toString();
+    }
 
-            if (lines.length - 1 != rows) return false;
+    /**
+     * This method lets the user pick a saved replay and plays it.
+     * The level of the replay is found by its checksum among the story and the custom levels,
+     * so it still plays if the level file was renamed.
+     * @param primaryStage the primary stage for the game
+     */
+    private void watchReplay(Stage primaryStage) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Select Replay");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Replays", "*" + Replay.EXTENSION)
+        );
+        File replaysDir = new File("replays");
+        if (replaysDir.isDirectory()) {
+            fileChooser.setInitialDirectory(replaysDir);
+        }
 
-            for (int i = 1; i < lines.length; i++) {
-                String line = lines[i].trim();
-                if (line.length() != cols) return false;
-                if (!line.matches("[WPGCKo.]+")) return false;
+        File selectedFile = fileChooser.showOpenDialog(primaryStage);
+        if (selectedFile == null) return;
+        long clickNanos = System.nanoTime();
+        try {
+            Replay replay = Replay.read(selectedFile.toPath());
+            Level layout = findLevel(replay.getChecksum());
+            if (layout == null) {
+                showAlert(Alert.AlertType.ERROR,
+                    "Error",
+                    "Level not found",
+                    "The level this replay was recorded on is not in the levels directory."
+                );
+                return;
             }
+            gameBoard = new GameBoard(layout, replay, primaryStage);
 
-            String fullContent = String.join("", lines);
-            if (fullContent.chars().filter(ch -> ch == 'P').count() != 1) return false;
-            if (fullContent.chars().filter(ch -> ch == 'G').count() != 1) return false;
-            if (fullContent.chars().filter(ch -> ch == 'K').count() != 1) return false;
+            Scene gameScene = new Scene(gameBoard);
+            primaryStage.setScene(gameScene);
+            gameBoard.requestFocus();
+            StartupTimes.firstFrameSinceClick(gameScene, "first game frame", clickNanos);
+        } catch (IOException | IllegalArgumentException e) {
+            showAlert(Alert.AlertType.ERROR,
+                "Error",
+                "Error loading replay",
+                "Could not play the replay: " + e.getMessage()
+            );
+        }
+    }
 
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    /**
+     * This method finds a story or custom level by its checksum.
+     * @param checksum the checksum of the level, see {@link Level#getChecksum()}
+     * @return the level, or null if no level has the checksum
+     * @throws IOException if a level file can not be read
+     */
+    private static Level findLevel(int checksum) throws IOException {
+        Path levelsDir = Path.of("levels");
+        StoryLevels storyLevels = StoryLevels.scan(levelsDir);
+        for (int level = 1; level <= storyLevels.getCount(); level++) {
+            Level layout = LevelCompiler.load(storyLevels.getFile(level));
+            if (layout.getChecksum() == checksum) return layout;
+        }
+        for (LevelCatalog.Entry entry : getLevelCatalog().getEntries()) {
+            if (entry.getChecksum() == checksum) {
+                return LevelCompiler.load(levelsDir.resolve(entry.getFileName()));
+            }
         }
+        return null;
     }
 
     /**
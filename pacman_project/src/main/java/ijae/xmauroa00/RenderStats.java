@@ -0,0 +1,179 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+
+/**
+ * This class measures the renderers on the level files.
+ * For every level and every renderer it plays a number of frames with a random player and prints
+ * the number of scene graph nodes, the time spent rendering a frame including the CSS and layout pass,
+ * the time between pulses and the used heap.
+ * <p>
+ * Usage: {@code mvn javafx:run@render-stats}, the levels in the {@code levels} directory are measured
+ * unless other level files are given as arguments.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public class RenderStats extends Application {
+    private static final int FRAMES = 300;
+    private static final String[] RENDERERS = {"cells", "canvas"};
+
+    private final List<Path> levels = new ArrayList<>();
+    private Stage stage;
+    private int run;
+
+    /**
+     * Constructs the measurement, it is started by the JavaFX launcher.
+     */
+    public RenderStats() {
+    }
+
+    /**
+     * This method collects the level files and starts the first measurement.
+     * @param primaryStage the stage the boards are shown on
+     * @throws IOException if the levels directory can not be read
+     */
+    @Override
+    public void start(Stage primaryStage) throws IOException {
+        stage = primaryStage;
+        List<String> args = getParameters().getRaw();
+        if (args.isEmpty()) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of("levels"), "*.txt")) {
+                files.forEach(levels::add);
+            }
+            levels.sort(null);
+        } else {
+            args.forEach(arg -> levels.add(Path.of(arg)));
+        }
+
+        System.out.printf("%-24s %-8s %8s %12s %12s %12s %10s%n",
+            "level", "renderer", "nodes", "frame avg ms", "frame p95 ms", "pulse avg ms", "heap MB");
+        stage.show();
+        nextRun();
+    }
+
+    /**
+     * This method measures the next level and renderer, or exits when all were measured.
+     */
+    private void nextRun() {
+        if (run == levels.size() * RENDERERS.length) {
+            Platform.exit();
+            return;
+        }
+        Path levelFile = levels.get(run / RENDERERS.length);
+        String rendererName = RENDERERS[run % RENDERERS.length];
+        run++;
+
+        Level level;
+        try {
+            level = LevelParser.parse(levelFile);
+        } catch (IOException | LevelFormatException e) {
+            System.err.println("Error loading level " + levelFile + ": " + e.getMessage());
+            nextRun();
+            return;
+        }
+
+        BoardRenderer renderer = BoardRenderer.create(rendererName);
+        StackPane root = new StackPane(renderer.getNode());
+        GameEngine firstGame = new GameEngine(level);
+        renderer.reset(firstGame);
+        stage.setScene(new Scene(root));
+        stage.sizeToScene();
+
+        long[] frameTimes = new long[FRAMES];
+        Direction[] directions = Direction.values();
+        new AnimationTimer() {
+            private GameEngine engine = firstGame;
+            private int frame;
+            private long firstPulse;
+            private long lastPulse;
+
+            @Override
+            public void handle(long now) {
+                if (frame == 0) firstPulse = now;
+                lastPulse = now;
+
+                if (engine.tick() != GameEngine.Status.RUNNING) {
+                    engine = new GameEngine(level);
+                    renderer.reset(engine);
+                }
+                engine.setDirection(directions[(int) (Math.random() * (directions.length - 1))]);
+
+                long start = System.nanoTime();
+                renderer.render(engine);
+                renderer.renderSprites(engine, 1);
+                root.applyCss();
+                root.layout();
+                frameTimes[frame] = System.nanoTime() - start;
+
+                if (++frame == FRAMES) {
+                    stop();
+                    report(levelFile, rendererName, root, frameTimes, (lastPulse - firstPulse) / (FRAMES - 1));
+                    Platform.runLater(RenderStats.this::nextRun);
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * This method prints the result of one measurement.
+     * @param levelFile the measured level
+     * @param rendererName the measured renderer
+     * @param root the root of the measured scene
+     * @param frameTimes the render time of every frame in nanoseconds
+     * @param pulseNanos the average time between two pulses in nanoseconds
+     */
+    private static void report(Path levelFile, String rendererName, Parent root, long[] frameTimes, long pulseNanos) {
+        long[] sorted = frameTimes.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long time : sorted) total += time;
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+
+        System.out.printf("%-24s %-8s %8d %12.3f %12.3f %12.3f %10.1f%n",
+            levelFile.getFileName(), rendererName, countNodes(root),
+            total / (double) sorted.length / 1e6,
+            sorted[(int) (sorted.length * 0.95)] / 1e6,
+            pulseNanos / 1e6,
+            heap / (1024.0 * 1024.0));
+    }
+
+    /**
+     * This method counts the nodes of a scene graph.
+     * @param node the root of the scene graph
+     * @return the number of nodes including the root
+     */
+    private static int countNodes(Node node) {
+        int count = 1;
+        if (node instanceof Parent) {
+            for (Node child : ((Parent) node).getChildrenUnmodifiable()) {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method is the entry point of the measurement.
+     * @param args optional level files to measure instead of the levels directory
+     */
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,360 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is the replay of a game on one level.
+ * A game only depends on the level, the seed of the {@link GameEngine}, the ghost mode and the directions
+ * the player chose, so a replay stores these and not the state of the game: playing the directions again on the
+ * tick they were chosen on gives the same game. It also stores the result of the game, so a replay can be checked.
+ * <p>
+ * A replay file holds, in big-endian order, the magic number {@code PMLR}, the format version, the ghost mode,
+ * the result status, the checksum of the level, the seed, the game speed, the number of ticks, the points and
+ * the number of direction changes. Every change follows as one variable-length number, the ticks since the previous
+ * change shifted left by three bits with the direction in the low bits, so most changes take one or two bytes.
+ * <p>
+ * Usage: {@code java -cp target/classes ijae.xmauroa00.Replay replays/<replay>.pmr levels/<level>.txt}
+ * plays a replay without showing it, as fast as possible, and checks that it gives the stored result.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class Replay {
+    /** The extension of replay files. */
+    public static final String EXTENSION = ".pmr";
+
+    private static final int MAGIC = 0x504D4C52;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 1 + 1 + 4 + 8 + 4 + 8 + 4 + 4;
+    private static final int DIRECTION_BITS = 3;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final GhostMode[] GHOST_MODES = GhostMode.values();
+    private static final GameEngine.Status[] STATUSES = GameEngine.Status.values();
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "replay-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int checksum;
+    private final long seed;
+    private GhostMode ghostMode = GhostMode.RANDOM;
+    private int stepMillis;
+    private long ticks;
+    private int points;
+    private GameEngine.Status status = GameEngine.Status.RUNNING;
+    private long[] changeTicks = new long[16];
+    private byte[] changeDirections = new byte[16];
+    private int changeCount;
+
+    /**
+     * This constructor starts recording a game.
+     * @param level the level of the game
+     * @param engine the game, before its first tick
+     */
+    public Replay(Level level, GameEngine engine) {
+        this(level.getChecksum(), engine.getSeed());
+    }
+
+    private Replay(int checksum, long seed) {
+        this.checksum = checksum;
+        this.seed = seed;
+    }
+
+    /**
+     * This method records a direction chosen by the player.
+     * Only the last direction chosen before a tick matters, and choosing the direction the player already has
+     * changes nothing, so neither is stored.
+     * @param tick the number of ticks played when the direction was chosen, see {@link GameEngine#getTickCount()}
+     * @param direction the direction
+     */
+    public void record(long tick, Direction direction) {
+        if (changeCount > 0 && changeTicks[changeCount - 1] == tick) {
+            changeCount--;
+        }
+        Direction current = changeCount > 0 ? DIRECTIONS[changeDirections[changeCount - 1]] : Direction.NONE;
+        if (direction == current) return;
+
+        if (changeCount == changeTicks.length) {
+            changeTicks = Arrays.copyOf(changeTicks, 2 * changeCount);
+            changeDirections = Arrays.copyOf(changeDirections, 2 * changeCount);
+        }
+        changeTicks[changeCount] = tick;
+        changeDirections[changeCount] = (byte) direction.ordinal();
+        changeCount++;
+    }
+
+    /**
+     * This method stores the result of the recorded game once it ended.
+     * @param engine the game
+     * @param stepMillis the length of a game step in milliseconds the game was played at
+     */
+    public void finish(GameEngine engine, int stepMillis) {
+        ghostMode = engine.getGhostMode();
+        this.stepMillis = stepMillis;
+        ticks = engine.getTickCount();
+        points = engine.getPoints();
+        status = engine.getStatus();
+    }
+
+    public int getChecksum() { return checksum; }
+    public long getSeed() { return seed; }
+    public GhostMode getGhostMode() { return ghostMode; }
+    public int getStepMillis() { return stepMillis; }
+    public long getTicks() { return ticks; }
+    public int getPoints() { return points; }
+    public GameEngine.Status getStatus() { return status; }
+    public int getChangeCount() { return changeCount; }
+
+    /**
+     * This class plays a replay on a new game, one tick at a time.
+     * A tick does not allocate, so a replay can be played as fast as the engine ticks.
+     */
+    public final class Playback {
+        private final GameEngine engine;
+        private int nextChange;
+
+        private Playback(GameEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * This method sets the directions chosen before the next tick and plays it.
+         * @return the state of the game after the tick
+         */
+        public GameEngine.Status step() {
+            while (nextChange < changeCount && changeTicks[nextChange] == engine.getTickCount()) {
+                engine.setDirection(DIRECTIONS[changeDirections[nextChange++]]);
+            }
+            return engine.tick();
+        }
+
+        /**
+         * Checks if the replay is over, the game ended or was played for as many ticks as it was recorded for.
+         * @return true if the replay is over
+         */
+        public boolean isFinished() {
+            return engine.getStatus() != GameEngine.Status.RUNNING || engine.getTickCount() >= ticks;
+        }
+
+        /**
+         * Checks if the game played so far gave the stored result.
+         * @return true if the ticks, the points and the state of the game are the stored ones
+         */
+        public boolean matches() {
+            return engine.getTickCount() == ticks && engine.getPoints() == points && engine.getStatus() == status;
+        }
+
+        public GameEngine getEngine() { return engine; }
+    }
+
+    /**
+     * This method starts playing the replay on a new game.
+     * @param level the level the replay was recorded on
+     * @return the playback
+     * @throws IllegalArgumentException if the replay was recorded on another level
+     */
+    public Playback play(Level level) {
+        if (level.getChecksum() != checksum) {
+            throw new IllegalArgumentException("The replay was recorded on another level");
+        }
+        GameEngine engine = new GameEngine(level, seed);
+        engine.setGhostMode(ghostMode);
+        return new Playback(engine);
+    }
+
+    /**
+     * This method plays the whole replay without showing it and checks that it gives the stored result.
+     * @param level the level the replay was recorded on
+     * @return true if the replay gives the stored result
+     * @throws IllegalArgumentException if the replay was recorded on another level
+     */
+    public boolean verify(Level level) {
+        Playback playback = play(level);
+        while (!playback.isFinished()) {
+            playback.step();
+        }
+        return playback.matches();
+    }
+
+    /**
+     * This method saves the replay into a directory on a background thread, the directory is created if needed.
+     * The file is named after the level and the time it is saved.
+     * @param dir the replays directory
+     * @return the pending save, completed with the replay file
+     */
+    public CompletableFuture<Path> save(Path dir) {
+        Path file = dir.resolve(String.format("%08x-%d%s", checksum, System.currentTimeMillis(), EXTENSION));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Files.createDirectories(dir);
+                write(file);
+                return file;
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }, WRITER);
+    }
+
+    /**
+     * This method writes the replay file.
+     * The file is written under a temporary name, forced to the disk and then renamed, so a reader never sees
+     * a partial file, even after a crash.
+     * @param file the replay file
+     * @throws IOException if the file can not be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 10 * changeCount);
+        buffer.putInt(MAGIC).putShort(VERSION).put((byte) ghostMode.ordinal()).put((byte) status.ordinal())
+            .putInt(checksum).putLong(seed).putInt(stepMillis).putLong(ticks).putInt(points).putInt(changeCount);
+        long previous = 0;
+        for (int i = 0; i < changeCount; i++) {
+            putVarLong(buffer, (changeTicks[i] - previous) << DIRECTION_BITS | changeDirections[i]);
+            previous = changeTicks[i];
+        }
+        buffer.flip();
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * This method reads a replay file.
+     * @param file the replay file
+     * @return the replay
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if the file is not a valid replay
+     */
+    public static Replay read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a replay file");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported replay version " + version);
+        }
+        int ghostMode = buffer.get();
+        int status = buffer.get();
+        if (ghostMode < 0 || ghostMode >= GHOST_MODES.length || status < 0 || status >= STATUSES.length) {
+            throw new IllegalArgumentException("Replay file is damaged, unknown ghost mode or status");
+        }
+
+        Replay replay = new Replay(buffer.getInt(), buffer.getLong());
+        replay.ghostMode = GHOST_MODES[ghostMode];
+        replay.status = STATUSES[status];
+        replay.stepMillis = buffer.getInt();
+        replay.ticks = buffer.getLong();
+        replay.points = buffer.getInt();
+        int changeCount = buffer.getInt();
+        if (changeCount < 0 || changeCount > buffer.remaining()) {
+            throw new IllegalArgumentException("Replay file has an invalid number of changes");
+        }
+
+        replay.changeTicks = new long[Math.max(changeCount, 1)];
+        replay.changeDirections = new byte[Math.max(changeCount, 1)];
+        long tick = 0;
+        try {
+            for (int i = 0; i < changeCount; i++) {
+                long change = getVarLong(buffer);
+                int direction = (int) (change & ((1 << DIRECTION_BITS) - 1));
+                tick += change >>> DIRECTION_BITS;
+                if (direction >= DIRECTIONS.length || tick > replay.ticks) {
+                    throw new IllegalArgumentException("Replay file is damaged, invalid change " + i);
+                }
+                replay.changeTicks[i] = tick;
+                replay.changeDirections[i] = (byte) direction;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Replay file ends early");
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Replay file has an invalid size");
+        }
+        replay.changeCount = changeCount;
+        return replay;
+    }
+
+    /**
+     * Writes a number of 7 bits per byte, the lowest bits first, the high bit set on every byte but the last.
+     * @param buffer the buffer
+     * @param value the number, not negative
+     */
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a number written by {@link #putVarLong(ByteBuffer, long)}.
+     * @param buffer the buffer
+     * @return the number
+     * @throws IllegalArgumentException if the number is longer than a long
+     */
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Replay file is damaged, a change is too long");
+    }
+
+    /**
+     * This method plays a replay without showing it and checks its result.
+     * @param args the replay file and the level file it was recorded on
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: Replay <replay" + EXTENSION + "> <level.txt>");
+            System.exit(1);
+        }
+        try {
+            Replay replay = read(Path.of(args[0]));
+            Level level = LevelCompiler.load(Path.of(args[1]));
+
+            long start = System.nanoTime();
+            Playback playback = replay.play(level);
+            while (!playback.isFinished()) {
+                playback.step();
+            }
+            long nanos = Math.max(System.nanoTime() - start, 1);
+
+            GameEngine engine = playback.getEngine();
+            System.out.printf("Recorded: %s after %d ticks with %d points, %d direction changes%n",
+                replay.getStatus(), replay.getTicks(), replay.getPoints(), replay.getChangeCount());
+            System.out.printf("Replayed: %s after %d ticks with %d points in %.1f ms (%.0f ticks/s)%n",
+                engine.getStatus(), engine.getTickCount(), engine.getPoints(), nanos / 1e6,
+                engine.getTickCount() * 1e9 / nanos);
+            System.out.println(playback.matches() ? "MATCH" : "MISMATCH");
+            System.exit(playback.matches() ? 0 : 1);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class plays many games without showing them and reports how the levels play and how fast the engine runs.
+ * The games are spread over worker threads which share nothing but the index of the next game: every thread
+ * keeps its own players and results and they are only added up at the end, so the throughput grows with the
+ * number of cores. The seeds of the games are drawn before the threads start, so a run with the same seed
+ * plays the same games whatever the number of threads is.
+ * <p>
+ * Usage: {@code java -cp target/classes ijae.xmauroa00.Simulator [options] [level.txt ...]},
+ * the levels in the {@code levels} directory are played unless level files are given. The options are:
+ * <ul>
+ *  <li>{@code -games <n>}: the number of games played on every level, 1000 by default</li>
+ *  <li>{@code -threads <n>}: the number of worker threads, the number of processors by default</li>
+ *  <li>{@code -player random|greedy}: the player, a random one or one walking to the nearest item
+ *      away from the ghosts, greedy by default</li>
+ *  <li>{@code -ghosts random|chase}: the ghost mode, random by default</li>
+ *  <li>{@code -ticks <n>}: the most ticks a game is played for before it counts as timed out, 10000 by default</li>
+ *  <li>{@code -seed <n>}: the seed the game seeds are drawn from, random by default</li>
+ * </ul>
+ * For every level it prints the win rate, the average points and ticks and the time of a tick,
+ * then the throughput of the whole run and the percentiles of the tick time.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class Simulator {
+    private final List<Path> levelFiles = new ArrayList<>();
+    private final List<Level> levels = new ArrayList<>();
+    private int games = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String player = "greedy";
+    private GhostMode ghostMode = GhostMode.RANDOM;
+    private int maxTicks = 10_000;
+    private long seed = new SplittableRandom().nextLong();
+
+    private Simulator() {
+    }
+
+    /**
+     * This interface is a player choosing the direction of the player before every tick.
+     */
+    interface Player {
+        /**
+         * Prepares the player for a new game.
+         * @param engine the new game
+         * @param seed the seed of the random choices of the player
+         */
+        void start(GameEngine engine, long seed);
+
+        /**
+         * Chooses the direction for the next tick.
+         * @param engine the game
+         * @return the direction
+         */
+        Direction choose(GameEngine engine);
+    }
+
+    /**
+     * This class is a player which keeps its direction and turns to a random direction now and then.
+     */
+    static final class RandomPlayer implements Player {
+        private static final Direction[] MOVES = {Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT};
+        private SplittableRandom random;
+        private Direction direction;
+
+        @Override
+        public void start(GameEngine engine, long seed) {
+            random = new SplittableRandom(seed);
+            direction = MOVES[random.nextInt(MOVES.length)];
+        }
+
+        @Override
+        public Direction choose(GameEngine engine) {
+            if (random.nextInt(8) == 0) {
+                direction = MOVES[random.nextInt(MOVES.length)];
+            }
+            return direction;
+        }
+    }
+
+    /**
+     * This class is a player which walks to the nearest point or key, and to the gate once nothing is left
+     * to collect. Tiles holding a ghost or next to one are avoided while another way exists.
+     * It keeps its own copy of the tiles, updated from the tiles changed by every tick, and searches it with a
+     * {@link DistanceField}, so choosing a direction does not allocate.
+     */
+    static final class GreedyPlayer implements Player {
+        private final Level level;
+        private final int cols;
+        private final byte[] tiles;
+        private final byte[] view;
+        private final DistanceField field;
+
+        GreedyPlayer(Level level) {
+            this.level = level;
+            cols = level.getCols();
+            tiles = new byte[level.getRows() * cols];
+            view = new byte[tiles.length];
+            field = new DistanceField(level.getRows(), cols);
+        }
+
+        @Override
+        public void start(GameEngine engine, long seed) {
+            level.getTiles().get(tiles);
+            System.arraycopy(tiles, 0, view, 0, tiles.length);
+        }
+
+        @Override
+        public Direction choose(GameEngine engine) {
+            for (int i = 0; i < engine.getChangedTileCount(); i++) {
+                int position = engine.getChangedTile(i);
+                tiles[position] = engine.getTile(position);
+                view[position] = tiles[position];
+            }
+            int player = engine.getPlayerPosition();
+
+            blockGhosts(engine, true);
+            field.compute(view, player, engine.hasKey());
+            blockGhosts(engine, false);
+            int target = findTarget(engine.hasKey());
+            if (target < 0) {
+                field.compute(tiles, player, engine.hasKey());
+                target = findTarget(engine.hasKey());
+            }
+            return target < 0 ? Direction.NONE : getFirstStep(player, target);
+        }
+
+        /**
+         * Marks the tiles of the ghosts and their neighbours as walls in the view, or restores them.
+         * @param engine the game
+         * @param block true to mark the tiles, false to restore them
+         */
+        private void blockGhosts(GameEngine engine, boolean block) {
+            for (int g = 0; g < engine.getGhostCount(); g++) {
+                int position = engine.getGhostPosition(g);
+                int col = position % cols;
+                mark(position, block);
+                if (position >= cols) mark(position - cols, block);
+                if (position + cols < tiles.length) mark(position + cols, block);
+                if (col != 0) mark(position - 1, block);
+                if (col != cols - 1) mark(position + 1, block);
+            }
+        }
+
+        private void mark(int position, boolean block) {
+            view[position] = block ? (byte) (tiles[position] | Level.WALL) : tiles[position];
+        }
+
+        /**
+         * Finds the nearest reachable point or key, or the gate if there is neither and the player has the key.
+         * @param hasKey true if the player has the key
+         * @return the position of the target, or -1 if none can be reached
+         */
+        private int findTarget(boolean hasKey) {
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            int gate = -1;
+            for (int position = 0; position < tiles.length; position++) {
+                int distance = field.getDistance(position);
+                if (distance <= 0) continue;
+                if ((tiles[position] & (Level.POINT | Level.KEY)) != 0 && distance < bestDistance) {
+                    best = position;
+                    bestDistance = distance;
+                } else if ((tiles[position] & Level.GATE) != 0 && hasKey) {
+                    gate = position;
+                }
+            }
+            return best >= 0 ? best : gate;
+        }
+
+        /**
+         * Gets the direction of the first step on a shortest way to a target, following the distances back.
+         * @param player the position of the player
+         * @param target the position of the target
+         * @return the direction of the first step
+         */
+        private Direction getFirstStep(int player, int target) {
+            int position = target;
+            while (field.getDistance(position) > 1) {
+                int next = field.getDistance(position) - 1;
+                int col = position % cols;
+                if (position >= cols && field.getDistance(position - cols) == next) position -= cols;
+                else if (position + cols < tiles.length && field.getDistance(position + cols) == next) position += cols;
+                else if (col != 0 && field.getDistance(position - 1) == next) position -= 1;
+                else position += 1;
+            }
+            if (position == player - cols) return Direction.UP;
+            if (position == player + cols) return Direction.DOWN;
+            if (position == player - 1) return Direction.LEFT;
+            return Direction.RIGHT;
+        }
+    }
+
+    /**
+     * This class holds the results of the games played on one level.
+     * The tick times are counted in a histogram with 16 buckets for every power of two of nanoseconds,
+     * so a percentile is known to about 6% and adding a tick does not allocate.
+     */
+    static final class Results {
+        private static final int SUB_BITS = 4;
+        private static final int LINEAR = 2 << SUB_BITS;
+        private static final int BUCKETS = LINEAR + (64 - SUB_BITS - 1) * (1 << SUB_BITS);
+
+        final long[] tickNanos = new long[BUCKETS];
+        int games;
+        int won;
+        int lost;
+        long points;
+        long ticks;
+        long maxNanos;
+
+        /**
+         * Counts the time of one tick.
+         * @param nanos the time of the tick in nanoseconds
+         */
+        void addTick(long nanos) {
+            tickNanos[bucket(nanos)]++;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * Counts the result of one game.
+         * @param engine the game once it ended or timed out
+         */
+        void addGame(GameEngine engine) {
+            games++;
+            if (engine.getStatus() == GameEngine.Status.WON) won++;
+            if (engine.getStatus() == GameEngine.Status.LOST) lost++;
+            points += engine.getPoints();
+            ticks += engine.getTickCount();
+        }
+
+        /**
+         * Adds the results of another thread to these.
+         * @param other the other results
+         */
+        void add(Results other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                tickNanos[i] += other.tickNanos[i];
+            }
+            games += other.games;
+            won += other.won;
+            lost += other.lost;
+            points += other.points;
+            ticks += other.ticks;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+        }
+
+        /**
+         * Gets a percentile of the tick time.
+         * @param percent the percentile, from 0 to 100
+         * @return the tick time in nanoseconds, the lower bound of its bucket
+         */
+        long percentile(double percent) {
+            long total = 0;
+            for (long count : tickNanos) {
+                total += count;
+            }
+            long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += tickNanos[i];
+                if (seen >= rank) return lowerBound(i);
+            }
+            return maxNanos;
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < LINEAR) return (int) Math.max(nanos, 0);
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int mantissa = (int) (nanos >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+            return LINEAR + ((exponent - SUB_BITS - 1) << SUB_BITS) + mantissa;
+        }
+
+        private static long lowerBound(int bucket) {
+            if (bucket < LINEAR) return bucket;
+            int exponent = ((bucket - LINEAR) >> SUB_BITS) + SUB_BITS + 1;
+            int mantissa = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+            return (long) ((1 << SUB_BITS) + mantissa) << (exponent - SUB_BITS);
+        }
+    }
+
+    /**
+     * This method plays the games and prints the results.
+     * @param args the options and the level files, see the class description
+     */
+    public static void main(String[] args) {
+        Simulator simulator = new Simulator();
+        try {
+            simulator.parseArguments(args);
+            simulator.loadLevels();
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: Simulator [-games n] [-threads n] [-player random|greedy] "
+                + "[-ghosts random|chase] [-ticks n] [-seed n] [level.txt ...]");
+            System.exit(1);
+        }
+        simulator.run();
+    }
+
+    /**
+     * Reads the options and the level files.
+     * @param args the arguments
+     * @throws IllegalArgumentException if an option is not known or has an invalid value
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                levelFiles.add(Path.of(args[i]));
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "-games":   games = Integer.parseInt(value); break;
+                    case "-threads": threads = Integer.parseInt(value); break;
+                    case "-ticks":   maxTicks = Integer.parseInt(value); break;
+                    case "-seed":    seed = Long.parseLong(value); break;
+                    case "-ghosts":  ghostMode = GhostMode.valueOf(value.toUpperCase()); break;
+                    case "-player":
+                        if (!value.equals("random") && !value.equals("greedy")) {
+                            throw new IllegalArgumentException("Unknown player " + value);
+                        }
+                        player = value;
+                        break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of " + args[i - 1] + ": " + value);
+            }
+        }
+        if (games < 1 || threads < 1 || maxTicks < 1) {
+            throw new IllegalArgumentException("The number of games, threads and ticks must be positive");
+        }
+    }
+
+    /**
+     * Loads the level files, the story and custom levels in the {@code levels} directory if none were given.
+     * @throws IOException if a level file can not be read
+     * @throws LevelFormatException if a level file is not in the correct format
+     */
+    private void loadLevels() throws IOException {
+        if (levelFiles.isEmpty()) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of("levels"), "*.txt")) {
+                files.forEach(levelFiles::add);
+            }
+            levelFiles.sort(null);
+        }
+        for (Path file : levelFiles) {
+            levels.add(LevelCompiler.load(file));
+        }
+        if (levels.isEmpty()) {
+            throw new IllegalArgumentException("No levels to play");
+        }
+    }
+
+    /**
+     * Plays the games on the worker threads and prints the results.
+     */
+    private void run() {
+        int total = games * levels.size();
+        long[] seeds = new long[total];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < total; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        AtomicInteger nextGame = new AtomicInteger();
+        Results[][] results = new Results[threads][];
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Results[] own = new Results[levels.size()];
+            results[t] = own;
+            workers[t] = new Thread(() -> play(nextGame, seeds, own), "simulator-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%d games, %s player, %s ghosts, %d threads, seed %d%n",
+            total, player, ghostMode.toString().toLowerCase(), threads, seed);
+        System.out.printf("%-24s %7s %7s %7s %9s %9s %10s %10s%n",
+            "level", "games", "won %", "lost %", "points", "ticks", "tick p50", "tick p99");
+        Results all = new Results();
+        for (int l = 0; l < levels.size(); l++) {
+            Results level = new Results();
+            for (Results[] own : results) {
+                if (own[l] != null) level.add(own[l]);
+            }
+            all.add(level);
+            System.out.printf("%-24s %7d %7.1f %7.1f %9.1f %9.1f %10s %10s%n",
+                levelFiles.get(l).getFileName(), level.games, 100.0 * level.won / level.games,
+                100.0 * level.lost / level.games, (double) level.points / level.games,
+                (double) level.ticks / level.games, formatNanos(level.percentile(50)),
+                formatNanos(level.percentile(99)));
+        }
+        System.out.printf("%d ticks in %.2f s: %.0f ticks/s, %.0f games/s%n",
+            all.ticks, nanos / 1e9, all.ticks * 1e9 / nanos, total * 1e9 / nanos);
+        System.out.printf("tick time: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+            formatNanos(all.percentile(50)), formatNanos(all.percentile(90)), formatNanos(all.percentile(99)),
+            formatNanos(all.percentile(99.9)), formatNanos(all.maxNanos));
+    }
+
+    /**
+     * This method is run by every worker thread, it plays the next game until all games are played.
+     * The players and the results are kept per level, so nothing is shared with the other threads.
+     * @param nextGame the index of the next game to play
+     * @param seeds the seeds of the games
+     * @param results the results of this thread for every level
+     */
+    private void play(AtomicInteger nextGame, long[] seeds, Results[] results) {
+        Player[] players = new Player[levels.size()];
+        for (int game; (game = nextGame.getAndIncrement()) < seeds.length; ) {
+            int l = game % levels.size();
+            Level level = levels.get(l);
+            if (players[l] == null) {
+                players[l] = player.equals("random") ? new RandomPlayer() : new GreedyPlayer(level);
+                results[l] = new Results();
+            }
+            GameEngine engine = new GameEngine(level, seeds[game]);
+            engine.setGhostMode(ghostMode);
+            Player current = players[l];
+            current.start(engine, ~seeds[game]);
+
+            Results own = results[l];
+            while (engine.getStatus() == GameEngine.Status.RUNNING && engine.getTickCount() < maxTicks) {
+                engine.setDirection(current.choose(engine));
+                long start = System.nanoTime();
+                engine.tick();
+                own.addTick(System.nanoTime() - start);
+            }
+            own.addGame(engine);
+        }
+    }
+
+    /**
+     * Formats a time in nanoseconds with a unit which keeps it short.
+     * @param nanos the time in nanoseconds
+     * @return the formatted time
+     */
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) return nanos + " ns";
+        if (nanos < 10_000_000) return String.format("%.1f us", nanos / 1e3);
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,210 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * This class packs the sprites of the game into one image, the atlas, scaled to the size of a cell.
+ * Every frame is a square of one cell in a single row of frames, so a sprite is drawn by copying its frame
+ * without scaling it, and all sprites share one image and so one texture on the graphics card.
+ * The source images are decoded at the size they are shown at, the player is stored once for every direction
+ * it can face, rotated by whole quarter turns so no pixel is resampled, and the key is stored at half size
+ * in the middle of its frame.
+ * The atlas is built once for a cell size and shared by all renderers.
+ * The images are read from the classpath, so the game finds them from any working directory, and the atlas is
+ * built on a background thread by {@link #load(int)}, so the menu can be shown while the images are decoded.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class SpriteAtlas {
+    /** The first of the four player frames, one for every quarter turn, see {@link #getPlayerFrame(Direction)}. */
+    public static final int PLAYER = 0;
+    /** The first ghost frame, one for every ghost look, see {@link #getGhostFrame(int)}. */
+    public static final int GHOST = PLAYER + 4;
+    /** The gate frame. */
+    public static final int GATE = GHOST + GameEngine.GHOST_VARIANTS;
+    /** The key frame. */
+    public static final int KEY = GATE + 1;
+
+    private static final int FRAME_COUNT = KEY + 1;
+    private static final String[] GHOST_FILES = {"red_ghost.png", "orange_ghost.png"};
+    private static final String IMAGES = "/pacman/images/";
+    private static final Map<Integer, CompletableFuture<SpriteAtlas>> ATLASES = new HashMap<>();
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "asset-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int cellSize;
+    private final WritableImage image;
+    private final Rectangle2D[] viewports = new Rectangle2D[FRAME_COUNT];
+
+    /**
+     * Constructs the atlas for a cell size, loading and packing every sprite.
+     * @param cellSize the size of a cell in pixels
+     */
+    private SpriteAtlas(int cellSize) {
+        this.cellSize = cellSize;
+        image = new WritableImage(cellSize * FRAME_COUNT, cellSize);
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            viewports[frame] = new Rectangle2D(frame * cellSize, 0, cellSize, cellSize);
+        }
+
+        Image player = load("PacMan.png", cellSize);
+        for (int turns = 0; turns < 4; turns++) {
+            pack(player, PLAYER + turns, turns, 0);
+        }
+        for (int variant = 0; variant < GameEngine.GHOST_VARIANTS; variant++) {
+            pack(load(GHOST_FILES[variant], cellSize), GHOST + variant, 0, 0);
+        }
+        pack(load("gate.png", cellSize), GATE, 0, 0);
+        pack(load("key.png", cellSize / 2), KEY, 0, cellSize / 4);
+    }
+
+    /**
+     * This method starts building the atlas for a cell size on the loader thread, if it was not started yet.
+     * The JavaFX toolkit must be started, the images are decoded without it.
+     * An atlas which failed to build is forgotten, so the next call builds it again.
+     * @param cellSize the size of a cell in pixels
+     * @return the atlas, completed when every image is packed, or failed with the error which stopped it
+     */
+    public static synchronized CompletableFuture<SpriteAtlas> load(int cellSize) {
+        CompletableFuture<SpriteAtlas> atlas = ATLASES.get(cellSize);
+        if (atlas == null || atlas.isCompletedExceptionally()) {
+            atlas = CompletableFuture.supplyAsync(() -> new SpriteAtlas(cellSize), LOADER);
+            ATLASES.put(cellSize, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * This method gets the atlas for a cell size, waiting for it if it is still being built.
+     * @param cellSize the size of a cell in pixels
+     * @return the atlas
+     */
+    public static SpriteAtlas get(int cellSize) {
+        return load(cellSize).join();
+    }
+
+    /**
+     * Gets the frame of the player facing a direction.
+     * @param facing the direction the player is facing
+     * @return the frame
+     */
+    public static int getPlayerFrame(Direction facing) {
+        return PLAYER + (int) BoardRenderer.getPlayerRotation(facing) / 90;
+    }
+
+    /**
+     * Gets the frame of a ghost look.
+     * @param variant the look of the ghost, see {@link GameEngine#getGhostVariant(int)}
+     * @return the frame
+     */
+    public static int getGhostFrame(int variant) {
+        return GHOST + variant;
+    }
+
+    /**
+     * This method draws a frame with its top left corner at a point, at the size of a cell.
+     * @param gc the graphics context to draw on
+     * @param frame the frame
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     */
+    public void draw(GraphicsContext gc, int frame, double x, double y) {
+        gc.drawImage(image, frame * cellSize, 0, cellSize, cellSize, x, y, cellSize, cellSize);
+    }
+
+    /**
+     * This method creates a node showing a frame at the size of a cell.
+     * @param frame the frame
+     * @return the node
+     */
+    public ImageView createView(int frame) {
+        ImageView view = new ImageView(image);
+        view.setViewport(viewports[frame]);
+        return view;
+    }
+
+    /**
+     * Gets the part of the atlas holding a frame, so a node created by {@link #createView(int)} can show another frame.
+     * @param frame the frame
+     * @return the part of the atlas, the same object for every call
+     */
+    public Rectangle2D getViewport(int frame) {
+        return viewports[frame];
+    }
+
+    public Image getImage() { return image; }
+    public int getCellSize() { return cellSize; }
+
+    /**
+     * Loads an image from the images on the classpath, decoded at the given size.
+     * @param fileName the name of the image file
+     * @param size the width and height to decode the image at
+     * @return the image, or null if it can not be read
+     */
+    private static Image load(String fileName, int size) {
+        try (InputStream in = SpriteAtlas.class.getResourceAsStream(IMAGES + fileName)) {
+            if (in == null) {
+                System.err.println("Error loading image " + fileName + ": not found on the classpath");
+                return null;
+            }
+            return new Image(in, size, size, false, true);
+        } catch (IOException e) {
+            System.err.println("Error loading image " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * This method copies an image into a frame, turned clockwise by a number of quarter turns.
+     * An image which could not be loaded leaves its frame transparent.
+     * @param source the square image, or null if it could not be loaded
+     * @param frame the frame
+     * @param turns the number of quarter turns
+     * @param offset the distance of the image from the top left corner of the frame
+     */
+    private void pack(Image source, int frame, int turns, int offset) {
+        if (source == null) return;
+        if (source.isError() || source.getPixelReader() == null) {
+            System.err.println("Error loading image: " + source.getException());
+            return;
+        }
+        int size = (int) source.getWidth();
+        int[] pixels = new int[size * size];
+        source.getPixelReader().getPixels(0, 0, size, size, PixelFormat.getIntArgbInstance(), pixels, 0, size);
+
+        int[] turned = turns == 0 ? pixels : new int[pixels.length];
+        if (turns != 0) {
+            int last = size - 1;
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int target;
+                    switch (turns) {
+                        case 1:  target = x * size + (last - y); break;
+                        case 2:  target = (last - y) * size + (last - x); break;
+                        default: target = (last - x) * size + y; break;
+                    }
+                    turned[target] = pixels[y * size + x];
+                }
+            }
+        }
+        PixelWriter writer = image.getPixelWriter();
+        writer.setPixels(frame * cellSize + offset, offset, size, size, PixelFormat.getIntArgbInstance(),
+            turned, 0, size);
+    }
+}
@@ -0,0 +1,72 @@
+package ijae.xmauroa00;
+
+import java.time.Instant;
+
+import javafx.scene.Scene;
+
+/**
+ * This class reports how long the game takes to start, when it is run with {@code -Dpacman.timing=true}.
+ * It prints the time from the start of the JVM process to the first frame of the menu and to the moment the
+ * sprites are ready, and the time from a click in the menu to the first frame of the game.
+ * A frame is counted when the scene is laid out for its first pulse, just before it is drawn.
+ * The start of the process is given by the operating system, on some systems only to a few milliseconds.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class StartupTimes {
+    private static final boolean ENABLED = Boolean.getBoolean("pacman.timing");
+    private static final long PROCESS_START_MILLIS = ProcessHandle.current().info().startInstant()
+        .map(Instant::toEpochMilli).orElse(0L);
+
+    private StartupTimes() {
+    }
+
+    /**
+     * This method reports the time from the start of the JVM process to now.
+     * @param event what happened now
+     */
+    public static void sinceStart(String event) {
+        if (!ENABLED) return;
+        if (PROCESS_START_MILLIS == 0) {
+            System.out.println("Startup: " + event + ", the start of the process is not known");
+            return;
+        }
+        System.out.println("Startup: " + event + " " + (System.currentTimeMillis() - PROCESS_START_MILLIS)
+            + " ms after the JVM started");
+    }
+
+    /**
+     * This method reports the time from the start of the JVM process to the first frame of a scene.
+     * @param scene the scene which was just shown
+     * @param frame the name of the frame
+     */
+    public static void firstFrameSinceStart(Scene scene, String frame) {
+        if (ENABLED) onFirstFrame(scene, () -> sinceStart(frame));
+    }
+
+    /**
+     * This method reports the time from a click to the first frame of a scene.
+     * @param scene the scene which was just shown
+     * @param frame the name of the frame
+     * @param clickNanos the {@link System#nanoTime()} of the click
+     */
+    public static void firstFrameSinceClick(Scene scene, String frame, long clickNanos) {
+        if (!ENABLED) return;
+        onFirstFrame(scene, () -> System.out.printf("Startup: %s %.1f ms after the menu click%n",
+            frame, (System.nanoTime() - clickNanos) / 1e6));
+    }
+
+    /**
+     * Runs an action once, when the scene is laid out for its first pulse.
+     * @param scene the scene
+     * @param action the action
+     */
+    private static void onFirstFrame(Scene scene, Runnable action) {
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package ijae.xmauroa00;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is the index of the story mode levels.
+ * The story levels are the files {@code level1.txt}, {@code level2.txt}, ... in the levels directory,
+ * the index holds them up to the first missing number.
+ * Levels can be loaded on a background thread, so the next level is ready before the current one is won.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+public final class StoryLevels {
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "level-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Path> files;
+
+    private StoryLevels(List<Path> files) {
+        this.files = files;
+    }
+
+    /**
+     * This method builds the index of the story levels in a directory.
+     * @param levelsDir the levels directory
+     * @return the index of the story levels
+     */
+    public static StoryLevels scan(Path levelsDir) {
+        List<Path> files = new ArrayList<>();
+        for (int level = 1; ; level++) {
+            Path file = levelsDir.resolve("level" + level + ".txt");
+            if (!Files.isRegularFile(file)) break;
+            files.add(file);
+        }
+        return new StoryLevels(files);
+    }
+
+    /**
+     * Checks if a file name is the name of a story level, so it is not shown as a custom level.
+     * @param fileName the name of the file
+     * @return true if the file is a story level
+     */
+    public static boolean isStoryLevel(String fileName) {
+        return fileName.matches("level[0-9]+\\.txt");
+    }
+
+    /**
+     * Gets the number of story levels.
+     * @return the number of story levels
+     */
+    public int getCount() {
+        return files.size();
+    }
+
+    /**
+     * Gets the file of a story level.
+     * @param level the level number, starting from 1
+     * @return the level file
+     */
+    public Path getFile(int level) {
+        return files.get(level - 1);
+    }
+
+    /**
+     * This method loads a story level on the background loader thread.
+     * The level is read, parsed and validated, or taken from its compiled file, see {@link LevelCompiler#load(Path)}.
+     * @param level the level number, starting from 1
+     * @return the level once it is loaded, or the error which stopped it from loading
+     */
+    public CompletableFuture<Level> prefetch(int level) {
+        Path file = getFile(level);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return LevelCompiler.load(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, LOADER);
+    }
+}
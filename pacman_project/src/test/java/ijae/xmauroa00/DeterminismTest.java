@@ -0,0 +1,84 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that a game is decided by its seed, so replays and simulations give the same result on every run.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class DeterminismTest {
+    private static final int TICKS = 1000;
+    private static final long SEED = 2024;
+    /**
+     * The checksums of the ghost trajectories from {@link #SEED}, for each ghost mode.
+     * A change to how the ghosts draw their moves changes them, and the recorded replays no longer play back.
+     */
+    private static final long RANDOM_TRAJECTORY = 3402745296L;
+    private static final long CHASE_TRAJECTORY = 1065178220L;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    @Test
+    void sameSeedGivesTheSameTrajectory() {
+        Level level = TestLevels.generate(33, 33, 20, false);
+        for (GhostMode mode : GhostMode.values()) {
+            assertEquals(trajectory(level, mode, SEED), trajectory(level, mode, SEED), mode.toString());
+        }
+        // chasing ghosts which can reach the player do not draw moves, random ghosts always do
+        assertNotEquals(trajectory(level, GhostMode.RANDOM, SEED), trajectory(level, GhostMode.RANDOM, SEED + 1));
+    }
+
+    @Test
+    void trajectoryOfASeedDoesNotChange() {
+        Level level = TestLevels.generate(33, 33, 20, false);
+        assertEquals(RANDOM_TRAJECTORY, trajectory(level, GhostMode.RANDOM, SEED));
+        assertEquals(CHASE_TRAJECTORY, trajectory(level, GhostMode.CHASE, SEED));
+    }
+
+    @Test
+    void ghostsOnALevelWithoutABorderWallStayOnTheLevel() {
+        String[] levels = {
+            "3 4\nC.PK\n....\n...G\n",
+            "5 7\nCo.oooC\no.o.o.o\nooPoooK\no.o.o.o\nCoooCoG\n",
+        };
+        for (String text : levels) {
+            assertTrue(LevelValidator.isValidLevelFormat(text), text);
+            Level level = LevelParser.parse(text);
+            for (GhostMode mode : GhostMode.values()) {
+                for (long seed = 0; seed < 200; seed++) {
+                    GameEngine engine = new GameEngine(level, seed);
+                    engine.setGhostMode(mode);
+                    for (int tick = 0; tick < 100; tick++) {
+                        engine.setDirection(DIRECTIONS[(int) ((seed + tick / 3) % DIRECTIONS.length)]);
+                        if (engine.tick() != GameEngine.Status.RUNNING) break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays a game with the player turning every few ticks and gets a checksum of the positions of the ghosts
+     * after every tick, until the game ends.
+     */
+    private static long trajectory(Level level, GhostMode mode, long seed) {
+        GameEngine engine = new GameEngine(level, seed);
+        engine.setGhostMode(mode);
+        CRC32 crc = new CRC32();
+        for (int tick = 0; tick < TICKS && engine.getStatus() == GameEngine.Status.RUNNING; tick++) {
+            engine.setDirection(DIRECTIONS[tick / 5 % DIRECTIONS.length]);
+            engine.tick();
+            for (int i = 0; i < engine.getGhostCount(); i++) {
+                int position = engine.getGhostPosition(i);
+                crc.update(position >>> 8);
+                crc.update(position);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,37 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the game rules of the engine.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class GameEngineTest {
+
+    @Test
+    void playerAndGhostSwappingTilesLoses() {
+        // the ghost chases the player to the left while the player walks to the right, onto the tile of the ghost
+        GameEngine engine = chase("3 7\nWWWWWWW\nWPCoKGW\nWWWWWWW\n");
+        engine.setDirection(Direction.RIGHT);
+        assertEquals(GameEngine.Status.LOST, engine.tick());
+        assertEquals(engine.getPreviousPlayerPosition(), engine.getPlayerPosition());
+    }
+
+    @Test
+    void playerAndGhostMeetingOnATileLoses() {
+        GameEngine engine = chase("3 7\nWWWWWWW\nWP.CKGW\nWWWWWWW\n");
+        engine.setDirection(Direction.RIGHT);
+        assertEquals(GameEngine.Status.LOST, engine.tick());
+        // the player moved onto the tile between them, the ghost moving onto it ended the game
+        assertEquals(engine.getPreviousPlayerPosition() + 1, engine.getPlayerPosition());
+        assertEquals(engine.getPlayerPosition() + 1, engine.getGhostPosition(0));
+    }
+
+    private static GameEngine chase(String level) {
+        GameEngine engine = new GameEngine(LevelParser.parse(level), 1);
+        engine.setGhostMode(GhostMode.CHASE);
+        return engine;
+    }
+}
@@ -0,0 +1,93 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Tests the worker pool running the ghost intents in parallel.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class GhostWorkersTest {
+    private static final int THREADS = 4;
+
+    @Test
+    void parallelGameMatchesSequentialGame() {
+        Level level = TestLevels.walledIn(129, 129, 600);
+        try (GhostWorkers workers = new GhostWorkers(THREADS)) {
+            for (GhostMode mode : GhostMode.values()) {
+                GameEngine sequential = new GameEngine(level, 42);
+                GameEngine parallel = new GameEngine(level, 42);
+                sequential.setGhostMode(mode);
+                parallel.setGhostMode(mode);
+                parallel.setWorkers(workers);
+                for (int tick = 0; tick < 500; tick++) {
+                    assertEquals(sequential.tick(), parallel.tick());
+                    assertArrayEquals(ghostPositions(sequential), ghostPositions(parallel),
+                        mode + " ghosts differ after tick " + tick);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void failedCallerChunkWaitsForTheWorkers() throws InterruptedException {
+        AtomicIntegerArray done = new AtomicIntegerArray(THREADS);
+        try (GhostWorkers workers = new GhostWorkers(THREADS)) {
+            assertThrows(IllegalArgumentException.class, () -> workers.run(THREADS, (start, end) -> {
+                if (start == 0) throw new IllegalArgumentException("caller chunk");
+                sleep(50);
+                done.set(start, 1);
+            }));
+            for (int chunk = 1; chunk < THREADS; chunk++) {
+                assertEquals(1, done.get(chunk), "chunk " + chunk + " was still running");
+            }
+
+            // the pool can be used again
+            workers.run(THREADS, (start, end) -> done.set(start, 2));
+            for (int chunk = 0; chunk < THREADS; chunk++) {
+                assertEquals(2, done.get(chunk));
+            }
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void closingWhileRunningFinishesTheTask() throws InterruptedException {
+        AtomicIntegerArray done = new AtomicIntegerArray(THREADS);
+        GhostWorkers workers = new GhostWorkers(THREADS);
+        Thread closer = new Thread(workers::close);
+        workers.run(THREADS, (start, end) -> {
+            if (start == 0) closer.start();
+            sleep(50);
+            done.set(start, 1);
+        });
+        closer.join();
+        for (int chunk = 0; chunk < THREADS; chunk++) {
+            assertEquals(1, done.get(chunk));
+        }
+        assertThrows(IllegalStateException.class, () -> workers.run(THREADS, (start, end) -> { }));
+    }
+
+    private static int[] ghostPositions(GameEngine engine) {
+        int[] positions = new int[engine.getGhostCount()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = engine.getGhostPosition(i);
+        }
+        return positions;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the high score store.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class HighScoresTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedSaveIsNotCountedWithLaterScores() throws Exception {
+        Path missing = dir.resolve("missing");
+        HighScores highScores = HighScores.open(missing.resolve("highscores.txt"));
+        try {
+            assertThrows(ExecutionException.class, () -> highScores.submit(10).get());
+
+            Files.createDirectories(missing);
+            highScores.submit(20).get();
+            highScores.refresh().get();
+            assertEquals(List.of(20), highScores.getScores());
+        } finally {
+            highScores.close();
+        }
+    }
+
+    @Test
+    void savedScoresAreReadBack() throws Exception {
+        Path file = dir.resolve("highscores.txt");
+        HighScores highScores = HighScores.open(file);
+        for (int score = 1; score <= HighScores.COMPACT_AFTER + 3; score++) {
+            highScores.submit(score);
+        }
+        highScores.flush();
+        highScores.close();
+
+        HighScores reopened = HighScores.open(file);
+        reopened.flush();
+        assertEquals(List.of(35, 34, 33, 32, 31), reopened.getScores());
+        reopened.close();
+    }
+}
@@ -0,0 +1,73 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the per-level leaderboards.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class LeaderboardsTest {
+    private static final int CHECKSUM = 0x12345678;
+    private static final int SPEED = 150;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesAreRankedAcrossOrderedAndAddedEntries() throws Exception {
+        Leaderboards leaderboards = Leaderboards.open(dir);
+        SplittableRandom random = new SplittableRandom(7);
+        List<Leaderboards.Entry> expected = new ArrayList<>();
+        try {
+            // enough entries to write the file in order several times, with ties between the scores
+            for (int i = 0; i < 300; i++) {
+                Leaderboards.Entry entry = new Leaderboards.Entry(random.nextInt(50), i, i, "player-" + i);
+                int index = 0;
+                while (index < expected.size() && expected.get(index).getScore() >= entry.getScore()) index++;
+                expected.add(index, entry);
+
+                assertEquals(index + 1, leaderboards.submit(CHECKSUM, SPEED, entry).get());
+                assertEquals(ticks(expected.subList(0, Math.min(5, expected.size()))),
+                    ticks(leaderboards.top(CHECKSUM, SPEED, 5)));
+            }
+            assertEquals(ticks(expected), ticks(leaderboards.top(CHECKSUM, SPEED, Integer.MAX_VALUE)));
+        } finally {
+            leaderboards.close();
+        }
+    }
+
+    @Test
+    void entryLeftUncountedByACrashIsOverwritten() throws Exception {
+        Leaderboards leaderboards = Leaderboards.open(dir);
+        try {
+            leaderboards.submit(CHECKSUM, SPEED, new Leaderboards.Entry(10, 1, 0, "a")).get();
+            leaderboards.submit(CHECKSUM, SPEED, new Leaderboards.Entry(5, 2, 0, "b")).get();
+            Path file = leaderboards.getFile(CHECKSUM, SPEED);
+            Files.write(file, new byte[Leaderboards.NAME_BYTES], StandardOpenOption.APPEND);
+
+            assertEquals(List.of(1, 2), ticks(leaderboards.top(CHECKSUM, SPEED, 5)));
+            assertEquals(2, leaderboards.submit(CHECKSUM, SPEED, new Leaderboards.Entry(7, 3, 0, "c")).get());
+            assertEquals(List.of(1, 3, 2), ticks(leaderboards.top(CHECKSUM, SPEED, 5)));
+        } finally {
+            leaderboards.close();
+        }
+    }
+
+    private static List<Integer> ticks(List<Leaderboards.Entry> entries) {
+        List<Integer> ticks = new ArrayList<>();
+        for (Leaderboards.Entry entry : entries) {
+            ticks.add(entry.getTicks());
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,48 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the catalog of custom levels.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class LevelCatalogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void onlyValidLevelsAreListedAndNoFileIsWritten() throws Exception {
+        Files.writeString(dir.resolve("valid.txt"), "3 4\nC.PK\n....\n...G\n");
+        Files.writeString(dir.resolve("unwinnable.txt"), "3 5\nPWWWW\nWWKoG\nWWWWW\n");
+        Files.writeString(dir.resolve("broken.txt"), "not a level\n");
+
+        LevelCatalog catalog = LevelCatalog.open(dir);
+        CountDownLatch changed = new CountDownLatch(1);
+        catalog.setOnChange(changed::countDown);
+        catalog.start();
+        try {
+            assertTrue(changed.await(10, TimeUnit.SECONDS), "the catalog was not built");
+        } finally {
+            catalog.close();
+        }
+
+        List<LevelCatalog.Entry> entries = catalog.getEntries();
+        assertEquals(1, entries.size());
+        assertEquals("valid.txt", entries.get(0).getFileName());
+        assertEquals(LevelParser.parse(dir.resolve("valid.txt")).getChecksum(), entries.get(0).getChecksum());
+        for (String name : new String[] {"valid", "unwinnable", "broken"}) {
+            assertFalse(Files.exists(dir.resolve(name + LevelCompiler.EXTENSION)), name + " was compiled");
+        }
+    }
+}
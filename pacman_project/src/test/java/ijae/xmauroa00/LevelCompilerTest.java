@@ -0,0 +1,46 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the compiled level files.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class LevelCompilerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void compiledLevelLoadsTheSameLevel() throws Exception {
+        Level level = TestLevels.walledIn(9, 11, 3);
+        Path file = dir.resolve("level.pml");
+        LevelCompiler.write(level, file);
+
+        Level read = LevelCompiler.read(file);
+        assertEquals(level.getChecksum(), read.getChecksum());
+        assertEquals(level.getPlayerSpawn(), read.getPlayerSpawn());
+        assertArrayEquals(level.copyTiles(), read.copyTiles());
+        LevelCompiler.verify(file);
+    }
+
+    @Test
+    void damagedTilesAreFoundOnlyWhenVerified() throws Exception {
+        Level level = TestLevels.walledIn(9, 11, 3);
+        Path file = dir.resolve("level.pml");
+        LevelCompiler.write(level, file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= Level.POINT;
+        Files.write(file, bytes);
+
+        assertEquals(level.getChecksum(), LevelCompiler.read(file).getChecksum());
+        assertThrows(IllegalArgumentException.class, () -> LevelCompiler.verify(file));
+    }
+}
@@ -0,0 +1,24 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the level validator.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class LevelValidatorTest {
+
+    @Test
+    void diagnosticsPointAtTheTileInTheFile() {
+        // the header follows blank lines and the rows are indented differently
+        String text = "\n\n3 5\n  PWWWW\n\tWWKoG\n WWWWW\n";
+        List<LevelValidator.Diagnostic> diagnostics = LevelValidator.validate(text).getDiagnostics();
+        assertEquals("[Line 5, column 4: the player can not reach the key, "
+            + "Line 5, column 6: the player can not reach the gate, "
+            + "Line 5, column 5: 1 point can not be collected, this is the first one]", diagnostics.toString());
+    }
+}
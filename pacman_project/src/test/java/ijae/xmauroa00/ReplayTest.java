@@ -0,0 +1,91 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests recording, writing, reading and playing back replays.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class ReplayTest {
+    /** The size of the replay file header, the changes follow it. */
+    private static final int HEADER_SIZE = 40;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordedGamePlaysBackTheSameWay() throws Exception {
+        Level level = TestLevels.generate(21, 21, 6, false);
+        for (GhostMode mode : GhostMode.values()) {
+            GameEngine engine = new GameEngine(level, 99);
+            engine.setGhostMode(mode);
+            Replay replay = new Replay(level, engine);
+            for (int tick = 0; tick < 5000 && engine.getStatus() == GameEngine.Status.RUNNING; tick++) {
+                if (tick % 7 == 0) {
+                    Direction direction = DIRECTIONS[(tick * 31 + 7) % DIRECTIONS.length];
+                    engine.setDirection(direction);
+                    replay.record(engine.getTickCount(), direction);
+                }
+                engine.tick();
+            }
+            replay.finish(engine, 150);
+
+            Replay read = roundTrip(replay);
+            assertEquals(engine.getStatus(), read.getStatus(), mode.toString());
+            assertEquals(engine.getPoints(), read.getPoints(), mode.toString());
+            assertEquals(engine.getTickCount(), read.getTicks(), mode.toString());
+            assertEquals(mode, read.getGhostMode());
+            assertTrue(read.verify(level), mode + " replay does not give the recorded result");
+        }
+    }
+
+    @Test
+    void tickDeltasAtTheVarintEdgesAreDecoded() throws Exception {
+        Level level = TestLevels.walledIn(9, 9, 2);
+        GameEngine engine = new GameEngine(level, 5);
+        Replay replay = new Replay(level, engine);
+        // the delta is shifted left by three bits, so these are the largest deltas of 1 to 4 bytes and the next ones
+        long[] deltas = {1, (1 << 4) - 1, 1 << 4, (1 << 11) - 1, 1 << 11, (1 << 18) - 1, 1 << 18};
+        int[] sizes = {1, 1, 2, 2, 3, 3, 4};
+        long tick = 0;
+        int changeBytes = 0;
+        for (int i = 0; i < deltas.length; i++) {
+            tick += deltas[i];
+            while (engine.getTickCount() < tick) engine.tick();
+            replay.record(tick, i % 2 == 0 ? Direction.UP : Direction.LEFT);
+            changeBytes += sizes[i];
+        }
+        engine.tick();
+        replay.finish(engine, 150);
+
+        Path file = dir.resolve("edges" + Replay.EXTENSION);
+        replay.write(file);
+        assertEquals(HEADER_SIZE + changeBytes, Files.size(file));
+        Replay read = roundTrip(replay);
+        assertEquals(deltas.length, read.getChangeCount());
+        assertTrue(read.verify(level));
+    }
+
+    /**
+     * Writes a replay, reads it back and checks that writing the read replay gives the same bytes,
+     * so every change was decoded to the tick and direction it was recorded with.
+     */
+    private Replay roundTrip(Replay replay) throws Exception {
+        Path file = dir.resolve("replay" + Replay.EXTENSION);
+        Path again = dir.resolve("again" + Replay.EXTENSION);
+        replay.write(file);
+        Replay read = Replay.read(file);
+        read.write(again);
+        assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again));
+        return read;
+    }
+}
@@ -0,0 +1,77 @@
+package ijae.xmauroa00;
+
+/**
+ * This class builds the levels the tests play.
+ * The levels have a wall border and a wall pillar on every even row and column, so all floor tiles are connected.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+final class TestLevels {
+
+    private TestLevels() {
+    }
+
+    /**
+     * This method builds a level with the player walled in the top left corner, so a game on it never ends.
+     * @param rows the number of rows, odd and at least 5
+     * @param cols the number of columns, odd and at least 5
+     * @param ghosts the number of ghosts, spread over the floor tiles
+     * @return the level
+     */
+    static Level walledIn(int rows, int cols, int ghosts) {
+        return generate(rows, cols, ghosts, true);
+    }
+
+    /**
+     * This method builds a level with the player in the top left corner.
+     * @param rows the number of rows, odd and at least 5
+     * @param cols the number of columns, odd and at least 5
+     * @param ghosts the number of ghosts, spread over the floor tiles
+     * @param walledPlayer true to wall the player in, so a game on the level never ends
+     * @return the level
+     */
+    static Level generate(int rows, int cols, int ghosts, boolean walledPlayer) {
+        char[][] tiles = new char[rows][cols];
+        int floorTiles = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                boolean wall = r == 0 || c == 0 || r == rows - 1 || c == cols - 1 || (r % 2 == 0 && c % 2 == 0);
+                tiles[r][c] = wall ? 'W' : ((r + c) % 2 == 1 ? 'o' : '.');
+                if (!wall) floorTiles++;
+            }
+        }
+        tiles[1][1] = 'P';
+        if (walledPlayer) {
+            tiles[1][2] = 'W';
+            tiles[2][1] = 'W';
+        }
+        tiles[rows - 2][1] = 'K';
+        tiles[rows - 2][cols - 2] = 'G';
+
+        int stride = Math.max(1, floorTiles / ghosts);
+        int placed = 0;
+        int floor = 0;
+        for (int r = 1; r < rows - 1 && placed < ghosts; r++) {
+            for (int c = 1; c < cols - 1 && placed < ghosts; c++) {
+                char tile = tiles[r][c];
+                if (tile != 'o' && tile != '.') continue;
+                if (floor++ % stride == 0 && r + c > 4) {
+                    tiles[r][c] = 'C';
+                    placed++;
+                }
+            }
+        }
+        return parse(tiles);
+    }
+
+    /**
+     * This method parses a level from its rows.
+     */
+    static Level parse(char[][] tiles) {
+        StringBuilder text = new StringBuilder();
+        text.append(tiles.length).append(' ').append(tiles[0].length).append('\n');
+        for (char[] row : tiles) {
+            text.append(row).append('\n');
+        }
+        return LevelParser.parse(text.toString());
+    }
+}
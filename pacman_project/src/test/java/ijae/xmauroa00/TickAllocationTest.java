@@ -0,0 +1,60 @@
+package ijae.xmauroa00;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that a game tick does not allocate on the heap once the game is warmed up.
+ * The bytes allocated by the thread are read around a loop of ticks on a level with the player walled in,
+ * so the game never ends. The level fits in the chunks a world keeps loaded, so no chunk is loaded during the loop.
+ * The budget only covers reading the allocated bytes, not a single allocation per tick.
+ * @author Arcangelo Mauro - xmauroa00
+ */
+class TickAllocationTest {
+    private static final int WARMUP_TICKS = 200_000;
+    private static final int TICKS = 1_000_000;
+    private static final long BUDGET_BYTES = 1024;
+    private static final Direction[] INPUT = {Direction.UP, Direction.RIGHT, Direction.DOWN, Direction.LEFT};
+
+    @Test
+    void randomGhostsDoNotAllocate() {
+        assertTickDoesNotAllocate(GhostMode.RANDOM);
+    }
+
+    @Test
+    void chasingGhostsDoNotAllocate() {
+        assertTickDoesNotAllocate(GhostMode.CHASE);
+    }
+
+    private static void assertTickDoesNotAllocate(GhostMode mode) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "allocated bytes per thread are not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        GameEngine engine = new GameEngine(TestLevels.walledIn(129, 129, 64), 1);
+        engine.setGhostMode(mode);
+        play(engine, WARMUP_TICKS);
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        play(engine, TICKS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(GameEngine.Status.RUNNING, engine.getStatus());
+        assertTrue(allocated <= BUDGET_BYTES, TICKS + " ticks allocated " + allocated + " bytes");
+    }
+
+    private static void play(GameEngine engine, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            engine.setDirection(INPUT[i & 3]);
+            engine.tick();
+        }
+    }
+}